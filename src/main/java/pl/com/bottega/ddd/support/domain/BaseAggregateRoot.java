@@ -11,6 +11,11 @@ public class BaseAggregateRoot {
 	protected Id id;
 	private AggregateStatus aggregateStatus = AggregateStatus.ACTIVE;
 
+	/**
+	 * Number of times the aggregate was saved; 0 for a new one.
+	 */
+	private long version;
+
 	public void markAsRemoved() {
 		aggregateStatus = AggregateStatus.ARCHIVE;
 	}
@@ -19,6 +24,24 @@ public class BaseAggregateRoot {
 		return id;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Called by repositories once the aggregate is saved.
+	 */
+	public void incrementVersion() {
+		version++;
+	}
+
+	/**
+	 * Used when the aggregate is rebuilt from storage.
+	 */
+	protected void restoreVersion(long version) {
+		this.version = version;
+	}
+
 	public boolean isRemoved() {
 		return aggregateStatus == AggregateStatus.ARCHIVE;
 	}
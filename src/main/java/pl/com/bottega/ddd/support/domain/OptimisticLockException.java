@@ -0,0 +1,32 @@
+package pl.com.bottega.ddd.support.domain;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
+
+/**
+ * Thrown by a repository when an aggregate was saved by someone else since
+ * it was loaded. Load it again and repeat the operation.
+ */
+public class OptimisticLockException extends DomainOperationException {
+
+	private static final long serialVersionUID = 4378264541954726718L;
+
+	private final long expectedVersion;
+
+	private final long actualVersion;
+
+	public OptimisticLockException(Id id, long expectedVersion, long actualVersion) {
+		super(id, "Aggregate modified concurrently: expected version " + expectedVersion + ", found "
+				+ actualVersion);
+		this.expectedVersion = expectedVersion;
+		this.actualVersion = actualVersion;
+	}
+
+	public long getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public long getActualVersion() {
+		return actualVersion;
+	}
+}
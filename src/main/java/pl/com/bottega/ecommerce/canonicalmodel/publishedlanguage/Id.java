@@ -15,35 +15,152 @@
  */
 package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.UUID;
 
 import org.apache.commons.lang3.Validate;
 
-
+/**
+ * Identifier of an aggregate.<br>
+ * Ids in canonical UUID form (36 lower case characters) are kept as two
+ * longs, which makes equals and hashCode constant time; their text is
+ * rendered only when asked for. Any other text (e.g. <code>"1"</code>) is
+ * kept as is.<br>
+ * Serialized form is the same as when Id was a plain String holder.
+ */
 public class Id implements Serializable{
 
+	private static final long serialVersionUID = -3939527439195960194L;
+
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("id", String.class) };
+
+	private static final byte UNRESOLVED = 0;
+
+	private static final byte UUID_FORM = 1;
+
+	private static final byte TEXT_FORM = 2;
+
+	private static final int UUID_LENGTH = 36;
+
+	private transient long mostSigBits;
+
+	private transient long leastSigBits;
+
+	/**
+	 * Text of the id; rendered lazily for ids in UUID form.
+	 */
 	private String id;
 
+	/**
+	 * {@link #UNRESOLVED} when state was filled by reflection (e.g. ORM) and
+	 * the text has not been parsed yet.
+	 */
+	private transient byte form;
+
 	public Id(String id) {
 		Validate.notNull(id);
 		this.id = id;
+		resolve();
+	}
+
+	private Id(long mostSigBits, long leastSigBits) {
+		this.mostSigBits = mostSigBits;
+		this.leastSigBits = leastSigBits;
+		this.form = UUID_FORM;
 	}
 
 	protected Id() {
 	}
-	
+
 	public static Id generate(){
-		return new Id(UUID.randomUUID().toString());
+		return of(UUID.randomUUID());
+	}
+
+	public static Id of(UUID uuid) {
+		return new Id(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * @return id with the text of <code>new UUID(mostSigBits, leastSigBits)</code>
+	 */
+	public static Id of(long mostSigBits, long leastSigBits) {
+		return new Id(mostSigBits, leastSigBits);
 	}
 
 	public String getId() {
-		return id;
+		String text = id;
+		if (text == null && form == UUID_FORM) {
+			text = new UUID(mostSigBits, leastSigBits).toString();
+			id = text;
+		}
+		return text;
+	}
+
+	private void resolve() {
+		if (id != null && parseUuid(id)) {
+			form = UUID_FORM;
+		} else {
+			form = TEXT_FORM;
+		}
+	}
+
+	/**
+	 * Accepts only the canonical lower case form, so the text rendered back
+	 * from the bits is always identical to the parsed one.
+	 */
+	private boolean parseUuid(String text) {
+		if (text.length() != UUID_LENGTH) {
+			return false;
+		}
+		long most = 0;
+		long least = 0;
+		for (int i = 0; i < UUID_LENGTH; i++) {
+			char c = text.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+				continue;
+			}
+			int digit;
+			if (c >= '0' && c <= '9') {
+				digit = c - '0';
+			} else if (c >= 'a' && c <= 'f') {
+				digit = c - 'a' + 10;
+			} else {
+				return false;
+			}
+			if (i < 18) {
+				most = (most << 4) | digit;
+			} else {
+				least = (least << 4) | digit;
+			}
+		}
+		mostSigBits = most;
+		leastSigBits = least;
+		return true;
+	}
+
+	private byte form() {
+		if (form == UNRESOLVED) {
+			resolve();
+		}
+		return form;
 	}
 
 	@Override
 	public int hashCode() {
-		return id.hashCode();
+		if (form() == UUID_FORM) {
+			long hilo = mostSigBits ^ leastSigBits;
+			return ((int) (hilo >> 32)) ^ (int) hilo;
+		}
+		return id == null ? 0 : id.hashCode();
 	}
 
 	@Override
@@ -55,6 +172,11 @@ public class Id implements Serializable{
 		if (getClass() != obj.getClass())
 			return false;
 		Id other = (Id) obj;
+		byte form = form();
+		if (form != other.form())
+			return false;
+		if (form == UUID_FORM)
+			return mostSigBits == other.mostSigBits && leastSigBits == other.leastSigBits;
 		if (id == null) {
 			if (other.id != null)
 				return false;
@@ -65,6 +187,40 @@ public class Id implements Serializable{
 
 	@Override
 	public String toString() {
-		return id;
+		return getId();
+	}
+
+	/**
+	 * Writes compact binary form: 17 bytes for ids in UUID form, the text
+	 * otherwise.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		if (form() == UUID_FORM) {
+			out.writeByte(UUID_FORM);
+			out.writeLong(mostSigBits);
+			out.writeLong(leastSigBits);
+		} else {
+			out.writeByte(TEXT_FORM);
+			out.writeUTF(id);
+		}
+	}
+
+	public static Id readFrom(DataInput in) throws IOException {
+		if (in.readByte() == UUID_FORM) {
+			return new Id(in.readLong(), in.readLong());
+		}
+		return new Id(in.readUTF());
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("id", getId());
+		out.writeFields();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		id = (String) fields.get("id", null);
+		resolve();
 	}
 }
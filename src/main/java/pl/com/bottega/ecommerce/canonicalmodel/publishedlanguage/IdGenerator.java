@@ -0,0 +1,10 @@
+package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
+
+/**
+ * Source of new aggregate ids, injected into factories.<br>
+ * Implementations have to be thread safe.
+ */
+public interface IdGenerator {
+
+	public Id generate();
+}
@@ -0,0 +1,107 @@
+package pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free generator of time ordered ids in UUID version 7 layout.<br>
+ * Unlike {@link Id#generate()} it does not touch the shared
+ * {@link SecureRandom}: every thread keeps its own sequence, so concurrent
+ * callers never contend. Ids sort by creation time, which keeps storage
+ * indexes append-mostly.
+ * <pre>
+ * most significant:  48 bits unix millis | version 7 | 12 bits sequence
+ * least significant: variant | 16 bits node | 24 bits thread slot | 22 bits random
+ * </pre>
+ * Ids are unique within a JVM (thread slot and sequence) and across JVMs
+ * as long as they use different node ids.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+	private static final int SEQUENCE_BITS = 12;
+
+	private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+
+	private static final int NODE_BITS = 16;
+
+	private static final int SLOT_BITS = 24;
+
+	private static final int RANDOM_BITS = 22;
+
+	private static final int DEFAULT_NODE_ID = new SecureRandom().nextInt() & ((1 << NODE_BITS) - 1);
+
+	private static final AtomicInteger SLOTS = new AtomicInteger();
+
+	/**
+	 * Shared by all generators, so ids stay unique within the JVM whatever
+	 * node ids are used.
+	 */
+	private static final ThreadLocal<ThreadState> STATE = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState(SLOTS.getAndIncrement() & ((1 << SLOT_BITS) - 1));
+		}
+	};
+
+	private final int nodeId;
+
+	/**
+	 * Uses a node id picked at random once per JVM.
+	 */
+	public TimeOrderedIdGenerator() {
+		this(DEFAULT_NODE_ID);
+	}
+
+	/**
+	 * @param nodeId 0 - 65535, unique per running instance
+	 */
+	public TimeOrderedIdGenerator(int nodeId) {
+		if (nodeId < 0 || nodeId >= (1 << NODE_BITS)) {
+			throw new IllegalArgumentException("Node id out of range: " + nodeId);
+		}
+		this.nodeId = nodeId;
+	}
+
+	@Override
+	public Id generate() {
+		ThreadState state = STATE.get();
+		state.next(System.currentTimeMillis());
+
+		long mostSigBits = (state.millis << 16) | (0x7L << SEQUENCE_BITS) | state.sequence;
+		long leastSigBits = (0x2L << 62)
+				| ((long) nodeId << (SLOT_BITS + RANDOM_BITS))
+				| ((long) state.slot << RANDOM_BITS)
+				| (ThreadLocalRandom.current().nextInt() & ((1 << RANDOM_BITS) - 1));
+		return Id.of(mostSigBits, leastSigBits);
+	}
+
+	private static final class ThreadState {
+
+		private final int slot;
+
+		private long millis;
+
+		private int sequence;
+
+		private ThreadState(int slot) {
+			this.slot = slot;
+		}
+
+		/**
+		 * Keeps ids of a thread strictly increasing, also when the clock goes
+		 * back or more than 4096 ids are requested within a millisecond.
+		 */
+		private void next(long now) {
+			if (now > millis) {
+				millis = now;
+				sequence = 0;
+			} else if (sequence < MAX_SEQUENCE) {
+				sequence++;
+			} else {
+				millis++;
+				sequence = 0;
+			}
+		}
+	}
+}
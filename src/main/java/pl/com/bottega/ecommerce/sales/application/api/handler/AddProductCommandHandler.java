@@ -16,6 +16,7 @@
 package pl.com.bottega.ecommerce.sales.application.api.handler;
 
 import pl.com.bottega.cqrs.command.handler.CommandHandler;
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
 import pl.com.bottega.ecommerce.sales.application.api.command.AddProductCommand;
 import pl.com.bottega.ecommerce.sales.domain.client.Client;
 import pl.com.bottega.ecommerce.sales.domain.client.ClientRepository;
@@ -30,6 +31,12 @@ import pl.com.bottega.ecommerce.system.application.SystemContext;
 
 public class AddProductCommandHandler implements CommandHandler<AddProductCommand, Void>{
 
+	/**
+	 * Saves of the same reservation racing with this one that are tolerated
+	 * before giving up.
+	 */
+	private static final int MAX_ATTEMPTS = 10;
+
 
 	private ReservationRepository reservationRepository;
 	
@@ -54,22 +61,32 @@ public class AddProductCommandHandler implements CommandHandler<AddProductComman
         this.systemContext = systemContext;
     }
 
+    /**
+     * Loads the reservation again and repeats adding when it was saved
+     * concurrently in the meantime; the product is chosen once.
+     */
     @Override
 	public Void handle(AddProductCommand command) {
-		Reservation reservation = reservationRepository.load(command.getOrderId());
-		
 		Product product = productRepository.load(command.getProductId());
 		
 		if (! product.isAvailable()){
 			Client client = loadClient();	
 			product = suggestionService.suggestEquivalent(product, client);
 		}
-			
-		reservation.add(product, command.getQuantity());
-		
-		reservationRepository.save(reservation);
 		
-		return null;
+		for (int attempt = 1; ; attempt++) {
+			Reservation reservation = reservationRepository.load(command.getOrderId());
+			
+			reservation.add(product, command.getQuantity());
+			
+			try {
+				reservationRepository.save(reservation);
+				return null;
+			} catch (OptimisticLockException e) {
+				if (attempt == MAX_ATTEMPTS)
+					throw e;
+			}
+		}
 	}
 	
 	private Client loadClient() {
@@ -1,9 +1,16 @@
 package pl.com.bottega.ecommerce.sales.domain.client;
 
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 
 public interface ClientRepository {
 	public Client load(Id id);
 
+	/**
+	 * Compare and set, same as {@link pl.com.bottega.ecommerce.sales.domain.reservation.ReservationRepository#save}.
+	 * 
+	 * @throws OptimisticLockException
+	 *             if the client was saved by someone else since it was loaded
+	 */
 	public void save(Client client);
 }
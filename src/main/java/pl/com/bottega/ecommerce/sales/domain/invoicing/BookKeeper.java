@@ -15,28 +15,210 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.invoicing;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
 import pl.com.bottega.ecommerce.sharedkernel.Money;
 
 public class BookKeeper {
 
+	/**
+	 * Requests with fewer items are always issued sequentially.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+
+	private static final int MIN_CHUNK = 256;
+
 	private InvoiceFactory invoiceFactory;
+
+	private ForkJoinPool pool;
+
+	private int parallelThreshold;
+
 	public BookKeeper(InvoiceFactory invoiceFactory) {
 		this.invoiceFactory = invoiceFactory;
 	}
+
+	/**
+	 * Parallel issuance for requests of at least
+	 * {@link #DEFAULT_PARALLEL_THRESHOLD} items.
+	 */
+	public BookKeeper(InvoiceFactory invoiceFactory, ForkJoinPool pool) {
+		this(invoiceFactory, pool, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Issues large requests in parallel: tax and lines are computed
+	 * concurrently, then added to the invoice in request order, so lines and
+	 * totals are the same as in sequential issuance. TaxPolicy passed to
+	 * {@link #issuance(InvoiceRequest, TaxPolicy)} has to be thread safe.
+	 * 
+	 * @param pool
+	 * @param parallelThreshold minimal number of items to go parallel
+	 */
+	public BookKeeper(InvoiceFactory invoiceFactory, ForkJoinPool pool, int parallelThreshold) {
+		this.invoiceFactory = invoiceFactory;
+		this.pool = pool;
+		this.parallelThreshold = parallelThreshold;
+	}
+
 	public Invoice issuance(InvoiceRequest invoiceRequest, TaxPolicy taxPolicy) {
 		Invoice invoice = invoiceFactory.create(invoiceRequest.getClientData());
 
-		for (RequestItem item : invoiceRequest.getItems()) {
-			Money net = item.getTotalCost();
-			Tax tax = taxPolicy.calculateTax(item.getProductData().getType(),
-					net);
+		Collection<RequestItem> items = invoiceRequest.getItems();
+		if (pool != null && items.size() >= parallelThreshold) {
+			for (InvoiceLine invoiceLine : issueLinesInParallel(items, taxPolicy)) {
+				invoice.addItem(invoiceLine);
+			}
+			return invoice;
+		}
 
-			InvoiceLine invoiceLine = new InvoiceLine(item.getProductData(),
-					item.getQuantity(), net, tax);
-			invoice.addItem(invoiceLine);
+		for (RequestItem item : items) {
+			invoice.addItem(issueLine(item, taxPolicy));
 		}
 
 		return invoice;
 	}
 
+	public IssuanceReport issuance(Stream<InvoiceRequest> invoiceRequests, TaxPolicy taxPolicy, InvoiceSink sink,
+			int parallelism) {
+		return issuance(invoiceRequests.iterator(), taxPolicy, sink, parallelism);
+	}
+
+	/**
+	 * Batch run: issues invoices for requests pulled one by one from the
+	 * iterator and passes each to the sink.<br>
+	 * At most <code>2 * parallelism</code> requests are in flight at a time,
+	 * so memory use does not depend on the size of the run. With parallelism
+	 * above 1 invoices reach the sink in no particular order and TaxPolicy
+	 * and sink have to be thread safe. The first failure stops the run and
+	 * is rethrown once invoices in flight are done.
+	 * 
+	 * @param invoiceRequests
+	 * @param taxPolicy
+	 * @param sink
+	 * @param parallelism number of worker threads, 1 runs in the caller thread
+	 * @return throughput and latency of the run
+	 */
+	public IssuanceReport issuance(Iterator<InvoiceRequest> invoiceRequests, TaxPolicy taxPolicy, InvoiceSink sink,
+			int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism has to be positive: " + parallelism);
+		}
+		IssuanceReport.Recorder recorder = new IssuanceReport.Recorder();
+
+		if (parallelism == 1) {
+			while (invoiceRequests.hasNext()) {
+				issueAndRecord(invoiceRequests.next(), taxPolicy, sink, recorder);
+			}
+			return recorder.finish();
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		int maxInFlight = 2 * parallelism;
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		try {
+			while (failure.get() == null && invoiceRequests.hasNext()) {
+				InvoiceRequest invoiceRequest = invoiceRequests.next();
+				inFlight.acquireUninterruptibly();
+				workers.execute(() -> {
+					try {
+						issueAndRecord(invoiceRequest, taxPolicy, sink, recorder);
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+			inFlight.acquireUninterruptibly(maxInFlight);
+		} finally {
+			workers.shutdown();
+		}
+
+		Throwable e = failure.get();
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		if (e != null) {
+			throw (RuntimeException) e;
+		}
+		return recorder.finish();
+	}
+
+	private void issueAndRecord(InvoiceRequest invoiceRequest, TaxPolicy taxPolicy, InvoiceSink sink,
+			IssuanceReport.Recorder recorder) {
+		long start = System.nanoTime();
+		sink.accept(issuance(invoiceRequest, taxPolicy));
+		recorder.record(System.nanoTime() - start);
+	}
+
+	private InvoiceLine[] issueLinesInParallel(Collection<RequestItem> items, TaxPolicy taxPolicy) {
+		RequestItem[] requestItems = items.toArray(new RequestItem[items.size()]);
+		InvoiceLine[] lines = new InvoiceLine[requestItems.length];
+		int chunk = Math.max(MIN_CHUNK, requestItems.length / (pool.getParallelism() * 4));
+
+		pool.invoke(new IssueLines(requestItems, lines, 0, requestItems.length, chunk, taxPolicy));
+
+		return lines;
+	}
+
+	static InvoiceLine issueLine(RequestItem item, TaxPolicy taxPolicy) {
+		Money net = item.getTotalCost();
+		Tax tax = taxPolicy.calculateTax(item.getProductData().getType(),
+				net);
+
+		return new InvoiceLine(item.getProductData(),
+				item.getQuantity(), net, tax);
+	}
+
+	/**
+	 * Fills lines[from, to) from the matching request items.
+	 */
+	@SuppressWarnings("serial")
+	private static class IssueLines extends RecursiveAction {
+
+		private final RequestItem[] items;
+
+		private final InvoiceLine[] lines;
+
+		private final int from;
+
+		private final int to;
+
+		private final int chunk;
+
+		private final TaxPolicy taxPolicy;
+
+		IssueLines(RequestItem[] items, InvoiceLine[] lines, int from, int to, int chunk, TaxPolicy taxPolicy) {
+			this.items = items;
+			this.lines = lines;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+			this.taxPolicy = taxPolicy;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunk) {
+				for (int i = from; i < to; i++) {
+					lines[i] = issueLine(items[i], taxPolicy);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new IssueLines(items, lines, from, middle, chunk, taxPolicy),
+					new IssueLines(items, lines, middle, to, chunk, taxPolicy));
+		}
+	}
+
 }
@@ -0,0 +1,202 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Remembers taxes calculated by another policy for repeating (product type,
+ * net) pairs.<br>
+ * The cache holds at most <code>maximumSize</code> entries, split into
+ * independently locked segments evicting their least recently used entry.
+ * The decorated policy is called outside of any lock; two threads missing
+ * the same key at once may both call it.<br>
+ * Call {@link #invalidateAll()} or {@link #invalidate(ProductType)} when tax
+ * rates change.
+ */
+public class CachingTaxPolicy implements TaxPolicy {
+
+	private static final int SEGMENTS = 16;
+
+	private final TaxPolicy taxPolicy;
+
+	private final Segment[] segments;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Incremented on invalidation, so taxes calculated before it are not
+	 * cached after it.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+
+	public CachingTaxPolicy(TaxPolicy taxPolicy, int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Cache size has to be positive: " + maximumSize);
+		}
+		this.taxPolicy = taxPolicy;
+		int segmentCount = Math.min(SEGMENTS, maximumSize);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			int segmentSize = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	@Override
+	public Tax calculateTax(ProductType productType, Money net) {
+		TaxKey key = new TaxKey(productType, net);
+		Segment segment = segmentFor(key);
+
+		Tax tax = segment.get(key);
+		if (tax != null) {
+			hits.increment();
+			return tax;
+		}
+
+		misses.increment();
+		long calculatedIn = generation.get();
+		tax = taxPolicy.calculateTax(productType, net);
+		if (tax != null) {
+			segment.put(key, tax, calculatedIn);
+		}
+		return tax;
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public void invalidate(ProductType productType) {
+		generation.incrementAndGet();
+		for (Segment segment : segments) {
+			segment.removeAll(productType);
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segmentFor(TaxKey key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return segments[(hash & Integer.MAX_VALUE) % segments.length];
+	}
+
+	private class Segment {
+
+		private final LinkedHashMap<TaxKey, Tax> entries;
+
+		Segment(final int capacity) {
+			this.entries = new LinkedHashMap<TaxKey, Tax>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<TaxKey, Tax> eldest) {
+					if (size() > capacity) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized Tax get(TaxKey key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(TaxKey key, Tax tax, long calculatedIn) {
+			if (calculatedIn == generation.get()) {
+				entries.put(key, tax);
+			}
+		}
+
+		synchronized void clear() {
+			entries.clear();
+		}
+
+		synchronized void removeAll(ProductType productType) {
+			Iterator<TaxKey> keys = entries.keySet().iterator();
+			while (keys.hasNext()) {
+				if (keys.next().productType == productType) {
+					keys.remove();
+				}
+			}
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+	}
+
+	private static final class TaxKey {
+
+		private final ProductType productType;
+
+		private final Money net;
+
+		TaxKey(ProductType productType, Money net) {
+			this.productType = productType;
+			this.net = net;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((productType == null) ? 0 : productType.hashCode());
+			result = prime * result + ((net == null) ? 0 : net.hashCode());
+			return result;
+		}
+
+		/**
+		 * Compares currency as well: Money treats zero amounts of different
+		 * currencies as equal, but their taxes differ in currency.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			TaxKey other = (TaxKey) obj;
+			if (productType != other.productType)
+				return false;
+			if (net == null)
+				return other.net == null;
+			return net.equals(other.net) && net.getCurrencyCode().equals(other.net.getCurrencyCode());
+		}
+	}
+}
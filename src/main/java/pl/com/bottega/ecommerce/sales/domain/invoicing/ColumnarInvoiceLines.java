@@ -0,0 +1,137 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyColumn;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyVector;
+
+/**
+ * Keeps lines as parallel columns: product and tax description indexes into
+ * deduplicated dictionaries, quantity, net and tax minor units. Gross is
+ * not stored, {@link InvoiceLine} derives it from net and tax.<br>
+ * Lines handed out are views created on access; they share product
+ * snapshots and descriptions with the dictionaries. Scans over amounts
+ * should use {@link #netVector()} and {@link #taxVector()}, which copy the
+ * columns without creating lines.
+ */
+class ColumnarInvoiceLines implements InvoiceLines {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final List<ProductData> products = new ArrayList<ProductData>();
+
+	/**
+	 * Indexes into {@link #products} by snapshot date, for every product.
+	 */
+	private final Map<ProductData, Map<Date, Integer>> productIndexes = new HashMap<ProductData, Map<Date, Integer>>();
+
+	private final List<String> descriptions = new ArrayList<String>();
+
+	private final Map<String, Integer> descriptionIndexes = new HashMap<String, Integer>();
+
+	private int[] productColumn = new int[INITIAL_CAPACITY];
+
+	private int[] quantityColumn = new int[INITIAL_CAPACITY];
+
+	private int[] descriptionColumn = new int[INITIAL_CAPACITY];
+
+	private MoneyColumn netColumn = new MoneyColumn();
+
+	private MoneyColumn taxColumn = new MoneyColumn();
+
+	private int size;
+
+	@Override
+	public void add(InvoiceLine line) {
+		if (size == productColumn.length) {
+			productColumn = Arrays.copyOf(productColumn, size * 2);
+			quantityColumn = Arrays.copyOf(quantityColumn, size * 2);
+			descriptionColumn = Arrays.copyOf(descriptionColumn, size * 2);
+		}
+		Tax tax = line.getTax();
+		productColumn[size] = indexOf(line.getProduct());
+		quantityColumn[size] = line.getQuantity();
+		descriptionColumn[size] = indexOf(tax.getDescription());
+		netColumn.add(line.getNet());
+		taxColumn.add(tax.getAmount());
+		size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public List<InvoiceLine> view() {
+		return new AbstractList<InvoiceLine>() {
+			@Override
+			public InvoiceLine get(int index) {
+				return ColumnarInvoiceLines.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public MoneyVector netVector() {
+		return netColumn.toVector();
+	}
+
+	@Override
+	public MoneyVector taxVector() {
+		return taxColumn.toVector();
+	}
+
+	@Override
+	public void release() {
+	}
+
+	private InvoiceLine get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		Tax tax = new Tax(taxColumn.get(index), descriptions.get(descriptionColumn[index]));
+		return new InvoiceLine(products.get(productColumn[index]), quantityColumn[index], netColumn.get(index), tax);
+	}
+
+	/**
+	 * Snapshots equal apart from their date are kept separately, so lines
+	 * give back exactly the snapshot they were created with.
+	 */
+	private int indexOf(ProductData product) {
+		Map<Date, Integer> byDate = productIndexes.get(product);
+		if (byDate == null) {
+			byDate = new HashMap<Date, Integer>(2);
+			productIndexes.put(product, byDate);
+		}
+		Integer index = byDate.get(product.getSnapshotDate());
+		if (index == null) {
+			index = products.size();
+			products.add(product);
+			byDate.put(product.getSnapshotDate(), index);
+		}
+		return index;
+	}
+
+	private int indexOf(String description) {
+		Integer index = descriptionIndexes.get(description);
+		if (index == null) {
+			index = descriptions.size();
+			descriptions.add(description);
+			descriptionIndexes.put(description, index);
+		}
+		return index;
+	}
+}
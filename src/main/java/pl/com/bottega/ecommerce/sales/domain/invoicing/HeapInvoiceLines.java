@@ -0,0 +1,29 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class HeapInvoiceLines implements InvoiceLines {
+
+	private final List<InvoiceLine> items = new ArrayList<InvoiceLine>();
+
+	@Override
+	public void add(InvoiceLine line) {
+		items.add(line);
+	}
+
+	@Override
+	public int size() {
+		return items.size();
+	}
+
+	@Override
+	public List<InvoiceLine> view() {
+		return Collections.unmodifiableList(items);
+	}
+
+	@Override
+	public void release() {
+	}
+}
@@ -15,13 +15,13 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.invoicing;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyVector;
 
 
 public class Invoice  {
@@ -30,30 +30,34 @@ public class Invoice  {
 	private ClientData client;
 
 
-	private Money net;
+	private MoneyAccumulator net;
 
-	private Money gros;
+	private MoneyAccumulator gros;
 
-	private List<InvoiceLine> items;
+	private InvoiceLines items;
 
 
 	private Id id;
 
 	Invoice(Id invoiceId, ClientData client) {
+		this(invoiceId, client, InvoiceStorage.heap());
+	}
+
+	Invoice(Id invoiceId, ClientData client, InvoiceStorage storage) {
 		this.id = invoiceId;
 		this.client = client;
-		this.items = new ArrayList<InvoiceLine>();
+		this.items = storage.newLines();
 		
-		this.net = Money.ZERO;
-		this.gros = Money.ZERO;
+		this.net = new MoneyAccumulator();
+		this.gros = new MoneyAccumulator();
 	}
 	
 
 	public void addItem(InvoiceLine item) {
 		items.add(item);
 
-		net = net.add(item.getNet());
-		gros = gros.add(item.getGros());
+		net.add(item.getNet());
+		gros.add(item.getGros());
 	}
 
 	/**
@@ -61,7 +65,40 @@ public class Invoice  {
 	 * @return immutable projection
 	 */
 	public List<InvoiceLine> getItems() {
-		return Collections.unmodifiableList(items);
+		return items.view();
+	}
+
+	/**
+	 * Net amounts of the items, for bulk reporting; columnar storage (see
+	 * {@link InvoiceStorage#columnar()}) copies them without creating
+	 * {@link InvoiceLine}s.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if non-zero amounts have different currencies
+	 */
+	public MoneyVector getNetVector() {
+		return items.netVector();
+	}
+
+	/**
+	 * Tax amounts of the items, see {@link #getNetVector()}; gross amounts
+	 * are <code>getNetVector().add(getTaxVector())</code>.
+	 */
+	public MoneyVector getTaxVector() {
+		return items.taxVector();
+	}
+
+	/**
+	 * Deletes temporary files of lines spilled to disk (see
+	 * {@link InvoiceStorage#spillingToDisk(int)}); items are not accessible
+	 * afterwards, totals are.
+	 */
+	public void releaseStorage() {
+		items.release();
+	}
+
+	public Id getId() {
+		return id;
 	}
 
 	public ClientData getClient() {
@@ -69,11 +106,11 @@ public class Invoice  {
 	}
 
 	public Money getNet() {
-		return net;
+		return net.toMoney();
 	}
 
 	public Money getGros() {
-		return gros;
+		return gros.toMoney();
 	}
 
 }
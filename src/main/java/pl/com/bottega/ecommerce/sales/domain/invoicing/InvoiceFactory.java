@@ -15,13 +15,31 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.invoicing;
 
-import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.IdGenerator;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.TimeOrderedIdGenerator;
 
 public class InvoiceFactory {
 
+	private IdGenerator idGenerator;
+
+	private InvoiceStorage storage;
+
+	public InvoiceFactory() {
+		this(new TimeOrderedIdGenerator());
+	}
+
+	public InvoiceFactory(IdGenerator idGenerator) {
+		this(idGenerator, InvoiceStorage.heap());
+	}
+
+	public InvoiceFactory(IdGenerator idGenerator, InvoiceStorage storage) {
+		this.idGenerator = idGenerator;
+		this.storage = storage;
+	}
+
 	public Invoice create(ClientData client) {
-		Invoice invoice = new Invoice(Id.generate(), client);
+		Invoice invoice = new Invoice(idGenerator.generate(), client, storage);
 
 		return invoice;
 	}
@@ -0,0 +1,537 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Append-only store of issued invoices in memory-mapped segment files.<br>
+ * Record: body length, CRC32 of the body, body (invoice id, client, lines in
+ * {@link InvoiceLineCodec} form). Totals are recomputed on read. Every
+ * segment has a sidecar index of (invoice id, offset) entries, which is
+ * loaded on open; records appended after the last indexed one are
+ * recovered by scanning, a torn record at the end is dropped.<br>
+ * {@link #append(Invoice)} returns once the invoice is on disk. Appends of
+ * concurrent threads are committed together: one of them forces the
+ * segment for all records written so far while the others wait for it.
+ * Reads decode straight from the mapped segments. When an invoice id is
+ * appended again, the latest record is the one read by id.
+ */
+public class InvoiceJournal implements InvoiceSink, Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final int HEADER_SIZE = 8;
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+
+	/**
+	 * Segment number in the high, offset in the low 32 bits.
+	 */
+	private final ConcurrentHashMap<Id, Long> index = new ConcurrentHashMap<Id, Long>();
+
+	private final Object writeLock = new Object();
+
+	private final Object commitLock = new Object();
+
+	/**
+	 * Guarded by {@link #writeLock}.
+	 */
+	private long appended;
+
+	/**
+	 * Guarded by {@link #commitLock}.
+	 */
+	private long durable;
+
+	private boolean forcing;
+
+	private volatile boolean closed;
+
+	private final ThreadLocal<ByteArrayOutputStream> recordBuffers = new ThreadLocal<ByteArrayOutputStream>() {
+		@Override
+		protected ByteArrayOutputStream initialValue() {
+			return new ByteArrayOutputStream(4096);
+		}
+	};
+
+	public InvoiceJournal(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public InvoiceJournal(File directory, int segmentSize) throws IOException {
+		if (segmentSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create journal directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		try {
+			for (int number = 0; segmentFile(number).exists(); number++) {
+				segments.add(Segment.open(this, number));
+			}
+			if (segments.isEmpty()) {
+				segments.add(Segment.open(this, 0));
+			}
+		} catch (IOException e) {
+			closeSegments();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the invoice and waits until it is forced to disk.
+	 */
+	@Override
+	public void accept(Invoice invoice) {
+		append(invoice);
+	}
+
+	/**
+	 * Appends the invoice and waits until it is forced to disk.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the journal can not be written
+	 */
+	public void append(Invoice invoice) {
+		ByteArrayOutputStream record = encode(invoice);
+		if (record.size() > segmentSize - HEADER_SIZE) {
+			throw new IllegalArgumentException("Invoice " + invoice.getId() + " does not fit into a journal segment");
+		}
+		try {
+			commit(write(invoice.getId(), record));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return latest invoice appended with the id, null if there is none
+	 */
+	public Invoice read(Id invoiceId) {
+		Long position = index.get(invoiceId);
+		if (position == null) {
+			return null;
+		}
+		Segment segment = segments.get((int) (position >>> 32));
+		try {
+			return decode(segment.record((int) position.longValue()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Passes all invoices in append order to the sink, including ones
+	 * appended again later.
+	 */
+	public void scan(InvoiceSink sink) {
+		for (Segment segment : segments) {
+			int end = segment.end;
+			int offset = 0;
+			while (offset < end) {
+				try {
+					ByteBuffer record = segment.record(offset);
+					offset += HEADER_SIZE + record.remaining();
+					sink.accept(decode(record));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of distinct invoice ids
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (writeLock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			segments.get(segments.size() - 1).force();
+		}
+		closeSegments();
+	}
+
+	private ByteArrayOutputStream encode(Invoice invoice) {
+		ByteArrayOutputStream record = recordBuffers.get();
+		record.reset();
+		DataOutputStream out = new DataOutputStream(record);
+		try {
+			invoice.getId().writeTo(out);
+			ClientData client = invoice.getClient();
+			client.getAggregateId().writeTo(out);
+			out.writeBoolean(client.getName() != null);
+			if (client.getName() != null) {
+				out.writeUTF(client.getName());
+			}
+			List<InvoiceLine> items = invoice.getItems();
+			out.writeInt(items.size());
+			for (InvoiceLine line : items) {
+				InvoiceLineCodec.write(line, out);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return record;
+	}
+
+	private Invoice decode(ByteBuffer record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(record));
+		Id invoiceId = Id.readFrom(in);
+		ClientData client = new ClientData(Id.readFrom(in), in.readBoolean() ? in.readUTF() : null);
+		Invoice invoice = new Invoice(invoiceId, client);
+		int lines = in.readInt();
+		for (int i = 0; i < lines; i++) {
+			invoice.addItem(InvoiceLineCodec.read(in));
+		}
+		return invoice;
+	}
+
+	/**
+	 * @return ticket to wait for in {@link #commit(long)}
+	 */
+	private long write(Id invoiceId, ByteArrayOutputStream record) throws IOException {
+		synchronized (writeLock) {
+			if (closed) {
+				throw new IllegalStateException("Journal is closed");
+			}
+			Segment segment = segments.get(segments.size() - 1);
+			if (segment.end + HEADER_SIZE + record.size() > segmentSize) {
+				segment.force();
+				segment = Segment.open(this, segments.size());
+				segments.add(segment);
+			}
+			int offset = segment.append(invoiceId, record);
+			index.put(invoiceId, ((long) segment.number << 32) | offset);
+			return ++appended;
+		}
+	}
+
+	/**
+	 * Group commit: the first thread finding no force in progress forces
+	 * everything written so far; threads arriving meanwhile wait and are
+	 * covered by the same or the next force.
+	 */
+	private void commit(long ticket) throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				synchronized (commitLock) {
+					while (durable < ticket && forcing) {
+						try {
+							commitLock.wait();
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+					if (durable >= ticket) {
+						return;
+					}
+					forcing = true;
+				}
+				long target = -1;
+				try {
+					target = forceWritten();
+				} finally {
+					synchronized (commitLock) {
+						forcing = false;
+						durable = Math.max(durable, target);
+						commitLock.notifyAll();
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Segments before the last one were forced when they were filled.
+	 *
+	 * @return number of records on disk
+	 */
+	private long forceWritten() throws IOException {
+		Segment segment;
+		long target;
+		synchronized (writeLock) {
+			segment = segments.get(segments.size() - 1);
+			target = appended;
+			segment.flushIndex();
+		}
+		segment.force();
+		return target;
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("invoices-%08d.journal", number));
+	}
+
+	private File indexFile(int number) {
+		return new File(directory, String.format("invoices-%08d.index", number));
+	}
+
+	private void closeSegments() {
+		for (Segment segment : segments) {
+			segment.close();
+		}
+	}
+
+	private static final class Segment {
+
+		private final int number;
+
+		private final RandomAccessFile file;
+
+		private final MappedByteBuffer buffer;
+
+		private final DataOutputStream indexOut;
+
+		/**
+		 * Offset of the first free byte; written under the journal's write
+		 * lock, read without it.
+		 */
+		private volatile int end;
+
+		private Segment(int number, RandomAccessFile file, MappedByteBuffer buffer, DataOutputStream indexOut, int end) {
+			this.number = number;
+			this.file = file;
+			this.buffer = buffer;
+			this.indexOut = indexOut;
+			this.end = end;
+		}
+
+		static Segment open(InvoiceJournal journal, int number) throws IOException {
+			RandomAccessFile file = new RandomAccessFile(journal.segmentFile(number), "rw");
+			try {
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, journal.segmentSize);
+				File indexFile = journal.indexFile(number);
+				List<Id> ids = new ArrayList<Id>();
+				List<Integer> offsets = new ArrayList<Integer>();
+				// a torn entry is rewritten, so new entries do not follow it
+				boolean rewrite = !loadIndex(indexFile, ids, offsets);
+				int end = 0;
+				while (!ids.isEmpty() && end == 0) {
+					int last = ids.size() - 1;
+					int length = validLength(buffer, offsets.get(last));
+					if (length < 0) {
+						rewrite = true;
+						ids.remove(last);
+						offsets.remove(last);
+					} else {
+						end = offsets.get(last) + HEADER_SIZE + length;
+					}
+				}
+				for (int length = validLength(buffer, end); length >= 0; length = validLength(buffer, end)) {
+					ByteBuffer record = slice(buffer, end, length);
+					ids.add(Id.readFrom(new DataInputStream(new ByteBufferInputStream(record))));
+					offsets.add(end);
+					end += HEADER_SIZE + length;
+					rewrite = true;
+				}
+
+				DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, !rewrite)));
+				Segment segment = new Segment(number, file, buffer, indexOut, end);
+				for (int i = 0; i < ids.size(); i++) {
+					journal.index.put(ids.get(i), ((long) number << 32) | offsets.get(i));
+					if (rewrite) {
+						segment.writeIndexEntry(ids.get(i), offsets.get(i));
+					}
+				}
+				indexOut.flush();
+				return segment;
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * A torn entry at the end is skipped.
+		 *
+		 * @return false if the index ends with a torn entry
+		 */
+		private static boolean loadIndex(File indexFile, List<Id> ids, List<Integer> offsets) throws IOException {
+			if (!indexFile.exists()) {
+				return true;
+			}
+			BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(indexFile));
+			DataInputStream in = new DataInputStream(buffered);
+			try {
+				while (true) {
+					buffered.mark(1);
+					if (buffered.read() < 0) {
+						return true;
+					}
+					buffered.reset();
+					Id id = Id.readFrom(in);
+					int offset = in.readInt();
+					ids.add(id);
+					offsets.add(offset);
+				}
+			} catch (EOFException e) {
+				return false;
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * @return body length of a complete record at the offset, -1 if
+		 *         there is none
+		 */
+		private static int validLength(MappedByteBuffer buffer, int offset) {
+			if (offset < 0 || offset + HEADER_SIZE > buffer.capacity()) {
+				return -1;
+			}
+			int length = buffer.getInt(offset);
+			if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+				return -1;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(slice(buffer, offset, length));
+			return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : -1;
+		}
+
+		private static ByteBuffer slice(MappedByteBuffer buffer, int offset, int length) {
+			ByteBuffer record = buffer.duplicate();
+			record.position(offset + HEADER_SIZE);
+			record.limit(offset + HEADER_SIZE + length);
+			return record;
+		}
+
+		/**
+		 * Called under the journal's write lock.
+		 */
+		int append(Id invoiceId, ByteArrayOutputStream record) throws IOException {
+			int offset = end;
+			int length = record.size();
+			CRC32 crc = new CRC32();
+			byte[] body = record.toByteArray();
+			crc.update(body, 0, length);
+			ByteBuffer target = buffer.duplicate();
+			target.position(offset + HEADER_SIZE);
+			target.put(body, 0, length);
+			buffer.putInt(offset + 4, (int) crc.getValue());
+			buffer.putInt(offset, length);
+			writeIndexEntry(invoiceId, offset);
+			end = offset + HEADER_SIZE + length;
+			return offset;
+		}
+
+		ByteBuffer record(int offset) throws IOException {
+			int length = buffer.getInt(offset);
+			if (length <= 0) {
+				throw new IOException("No journal record at " + number + ":" + offset);
+			}
+			return slice(buffer, offset, length);
+		}
+
+		private void writeIndexEntry(Id invoiceId, int offset) throws IOException {
+			invoiceId.writeTo(indexOut);
+			indexOut.writeInt(offset);
+		}
+
+		void flushIndex() throws IOException {
+			indexOut.flush();
+		}
+
+		void force() throws IOException {
+			flushIndex();
+			buffer.force();
+		}
+
+		void close() {
+			try {
+				indexOut.close();
+			} catch (IOException e) {
+				// index is recovered from the segment on open
+			}
+			try {
+				file.close();
+			} catch (IOException e) {
+				// mapping stays valid until collected
+			}
+		}
+	}
+
+	/**
+	 * Reads a buffer without copying it to the heap first.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long count) {
+			int skipped = (int) Math.min(count, buffer.remaining());
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -38,8 +38,6 @@ public class InvoiceLine {
 		this.quantity = quantity;
 		this.net = net;
 		this.tax = tax;
-
-		this.gros = net.add(tax.getAmount());
 	}
 
 	public ProductData getProduct() {
@@ -54,7 +52,14 @@ public class InvoiceLine {
 		return net;
 	}
 
+	/**
+	 * Computed on first use, so line views of columnar storage that are
+	 * only scanned for other fields do not pay for it.
+	 */
 	public Money getGros() {
+		if (gros == null) {
+			gros = net.add(tax.getAmount());
+		}
 		return gros;
 	}
 
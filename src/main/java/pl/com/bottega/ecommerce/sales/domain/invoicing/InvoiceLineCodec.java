@@ -0,0 +1,40 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Compact binary form of an invoice line: product snapshot, quantity, net,
+ * tax amount and description. Gross is derived from net and tax on read.
+ */
+final class InvoiceLineCodec {
+
+	private InvoiceLineCodec() {
+	}
+
+	static void write(InvoiceLine line, DataOutput out) throws IOException {
+		line.getProduct().writeTo(out);
+		out.writeInt(line.getQuantity());
+		line.getNet().writeTo(out);
+		Tax tax = line.getTax();
+		tax.getAmount().writeTo(out);
+		String description = tax.getDescription();
+		out.writeBoolean(description != null);
+		if (description != null) {
+			out.writeUTF(description);
+		}
+	}
+
+	static InvoiceLine read(DataInput in) throws IOException {
+		ProductData product = ProductData.readFrom(in);
+		int quantity = in.readInt();
+		Money net = Money.readFrom(in);
+		Money taxAmount = Money.readFrom(in);
+		String description = in.readBoolean() ? in.readUTF() : null;
+		return new InvoiceLine(product, quantity, net, new Tax(taxAmount, description));
+	}
+}
@@ -0,0 +1,40 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.List;
+
+import pl.com.bottega.ecommerce.sharedkernel.MoneyVector;
+
+/**
+ * Backing store of invoice lines, see {@link InvoiceStorage}.
+ */
+interface InvoiceLines {
+
+	void add(InvoiceLine line);
+
+	int size();
+
+	/**
+	 * @return immutable projection
+	 */
+	List<InvoiceLine> view();
+
+	/**
+	 * @return copy of the net amounts of all lines
+	 */
+	default MoneyVector netVector() {
+		return MoneyVector.of(view(), InvoiceLine::getNet);
+	}
+
+	/**
+	 * @return copy of the tax amounts of all lines
+	 */
+	default MoneyVector taxVector() {
+		return MoneyVector.of(view(), line -> line.getTax().getAmount());
+	}
+
+	/**
+	 * Frees resources held outside of the heap; lines are not accessible
+	 * afterwards.
+	 */
+	void release();
+}
@@ -0,0 +1,15 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+/**
+ * Receives invoices issued in a batch run, e.g. to persist or send them.
+ */
+public interface InvoiceSink {
+
+	/**
+	 * Called from worker threads when the run is parallel, so it has to be
+	 * thread safe then.
+	 * 
+	 * @param invoice
+	 */
+	public void accept(Invoice invoice);
+}
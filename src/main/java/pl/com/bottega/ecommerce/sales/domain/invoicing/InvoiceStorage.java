@@ -0,0 +1,87 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.io.File;
+
+/**
+ * How an {@link Invoice} keeps its lines. Totals are always kept in memory,
+ * whatever the storage.
+ */
+public abstract class InvoiceStorage {
+
+	private static final InvoiceStorage HEAP = new InvoiceStorage() {
+		@Override
+		InvoiceLines newLines() {
+			return new HeapInvoiceLines();
+		}
+	};
+
+	private static final InvoiceStorage COLUMNAR = new InvoiceStorage() {
+		@Override
+		InvoiceLines newLines() {
+			return new ColumnarInvoiceLines();
+		}
+	};
+
+	InvoiceStorage() {
+	}
+
+	abstract InvoiceLines newLines();
+
+	/**
+	 * Lines kept as objects on the heap (default).
+	 */
+	public static InvoiceStorage heap() {
+		return HEAP;
+	}
+
+	/**
+	 * Lines kept in parallel primitive columns with deduplicated product
+	 * snapshots; {@link Invoice#getItems()} creates line views on access,
+	 * {@link Invoice#getNetVector()} and {@link Invoice#getTaxVector()} copy
+	 * the amount columns. Takes a fraction of the heap of {@link #heap()} for
+	 * large invoices.
+	 */
+	public static InvoiceStorage columnar() {
+		return COLUMNAR;
+	}
+
+	/**
+	 * Lines kept on the heap until there are more than <code>threshold</code>
+	 * of them, then written to a temporary file in the default temporary
+	 * directory.
+	 */
+	public static InvoiceStorage spillingToDisk(int threshold) {
+		return spillingToDisk(threshold, null);
+	}
+
+	/**
+	 * Lines kept on the heap until there are more than <code>threshold</code>
+	 * of them, then written to a temporary file in the given directory.<br>
+	 * Products of spilled lines have to be real {@link pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData}
+	 * snapshots. Call {@link Invoice#releaseStorage()} when the invoice is no
+	 * longer needed, otherwise the file is left behind; see
+	 * {@link #deleteSpillFiles(File)}.
+	 */
+	public static InvoiceStorage spillingToDisk(final int threshold, final File directory) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Spill threshold can not be negative: " + threshold);
+		}
+		return new InvoiceStorage() {
+			@Override
+			InvoiceLines newLines() {
+				return new SpillingInvoiceLines(threshold, directory);
+			}
+		};
+	}
+
+	/**
+	 * Deletes spill files left in the directory by invoices never released,
+	 * e.g. by a crashed process. Call it when no invoice spilling there is in
+	 * use, e.g. on startup.
+	 *
+	 * @return number of files deleted
+	 */
+	public static int deleteSpillFiles(File directory) {
+		return SpillingInvoiceLines.deleteFiles(directory);
+	}
+}
@@ -0,0 +1,111 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency of a batch issuance run.<br>
+ * Latency of an invoice covers issuance and handing it to the sink.
+ * Percentiles come from a histogram with power of two buckets, so they are
+ * upper bounds accurate to a factor of two.
+ */
+public class IssuanceReport {
+
+	private static final int BUCKETS = 64;
+
+	private final long invoiceCount;
+
+	private final long elapsedNanos;
+
+	private final long totalLatencyNanos;
+
+	private final long maxLatencyNanos;
+
+	private final long[] histogram;
+
+	private IssuanceReport(long invoiceCount, long elapsedNanos, long totalLatencyNanos, long maxLatencyNanos,
+			long[] histogram) {
+		this.invoiceCount = invoiceCount;
+		this.elapsedNanos = elapsedNanos;
+		this.totalLatencyNanos = totalLatencyNanos;
+		this.maxLatencyNanos = maxLatencyNanos;
+		this.histogram = histogram;
+	}
+
+	public long getInvoiceCount() {
+		return invoiceCount;
+	}
+
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public double getInvoicesPerSecond() {
+		return elapsedNanos == 0 ? 0 : invoiceCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	public long getMeanLatency(TimeUnit unit) {
+		return invoiceCount == 0 ? 0 : unit.convert(totalLatencyNanos / invoiceCount, TimeUnit.NANOSECONDS);
+	}
+
+	public long getMaxLatency(TimeUnit unit) {
+		return unit.convert(maxLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param percentile e.g. 99.0
+	 */
+	public long getLatencyPercentile(double percentile, TimeUnit unit) {
+		long rank = (long) Math.ceil(invoiceCount * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += histogram[bucket];
+			if (seen >= rank && seen > 0) {
+				long upperBound = (1L << bucket) - 1;
+				return unit.convert(Math.min(upperBound, maxLatencyNanos), TimeUnit.NANOSECONDS);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d invoices in %d ms (%.1f/s), latency mean %d us, p99 %d us, max %d us", invoiceCount,
+				getElapsed(TimeUnit.MILLISECONDS), getInvoicesPerSecond(), getMeanLatency(TimeUnit.MICROSECONDS),
+				getLatencyPercentile(99, TimeUnit.MICROSECONDS), getMaxLatency(TimeUnit.MICROSECONDS));
+	}
+
+	/**
+	 * Thread safe collector of per-invoice latencies.
+	 */
+	static class Recorder {
+
+		private final long startNanos = System.nanoTime();
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalLatency = new LongAdder();
+
+		private final AtomicLong maxLatency = new AtomicLong();
+
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		void record(long latencyNanos) {
+			count.increment();
+			totalLatency.add(latencyNanos);
+			maxLatency.accumulateAndGet(latencyNanos, Math::max);
+			histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, latencyNanos)));
+		}
+
+		IssuanceReport finish() {
+			long[] buckets = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = histogram.get(i);
+			}
+			return new IssuanceReport(count.sum(), System.nanoTime() - startNanos, totalLatency.sum(),
+					maxLatency.get(), buckets);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps the first <code>threshold</code> lines on the heap, then moves all
+ * lines to a temporary file and appends further ones there.<br>
+ * Record: length and {@link InvoiceLineCodec} form of the line. Only the
+ * byte offset of every {@value #CHUNK_SIZE}th record stays in memory; lines
+ * are read a chunk of that many at a time, the last one read by
+ * {@link #get(int)} being kept. Records are buffered and appended with the
+ * file opened just for that, so no file stays open between calls.
+ */
+class SpillingInvoiceLines implements InvoiceLines {
+
+	static final String FILE_PREFIX = "invoice-";
+
+	static final String FILE_SUFFIX = ".lines";
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final int threshold;
+
+	private final File directory;
+
+	private List<InvoiceLine> heapLines = new ArrayList<InvoiceLine>();
+
+	private int size;
+
+	private File file;
+
+	/**
+	 * Records not written to the file yet.
+	 */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream(BUFFER_SIZE);
+
+	private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+	private long position;
+
+	private long[] checkpoints = new long[16];
+
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+
+	/**
+	 * Chunk last read by {@link #get(int)}; may lack lines added since.
+	 */
+	private List<InvoiceLine> chunk;
+
+	private int chunkStart;
+
+	SpillingInvoiceLines(int threshold, File directory) {
+		this.threshold = threshold;
+		this.directory = directory;
+	}
+
+	@Override
+	public void add(InvoiceLine line) {
+		if (file == null) {
+			if (heapLines.size() < threshold) {
+				heapLines.add(line);
+				size++;
+				return;
+			}
+			spill();
+		}
+		try {
+			append(line);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public List<InvoiceLine> view() {
+		return new AbstractList<InvoiceLine>() {
+			@Override
+			public InvoiceLine get(int index) {
+				return SpillingInvoiceLines.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<InvoiceLine> iterator() {
+				return SpillingInvoiceLines.this.iterator();
+			}
+		};
+	}
+
+	@Override
+	public void release() {
+		chunk = null;
+		pending.reset();
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+		heapLines = new ArrayList<InvoiceLine>();
+		size = 0;
+	}
+
+	/**
+	 * Deletes spill files left in the directory, e.g. by a crashed process.
+	 *
+	 * @return number of files deleted
+	 */
+	static int deleteFiles(File directory) {
+		File[] files = directory.listFiles(
+				(dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+		int deleted = 0;
+		if (files != null) {
+			for (File file : files) {
+				if (file.delete()) {
+					deleted++;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	private InvoiceLine get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (file == null) {
+			return heapLines.get(index);
+		}
+		int start = index / CHUNK_SIZE * CHUNK_SIZE;
+		if (chunk == null || chunkStart != start || index - start >= chunk.size()) {
+			chunk = readChunk(start);
+			chunkStart = start;
+		}
+		return chunk.get(index - start);
+	}
+
+	private Iterator<InvoiceLine> iterator() {
+		if (file == null) {
+			return heapLines.subList(0, size).iterator();
+		}
+		final int end = size;
+		return new Iterator<InvoiceLine>() {
+
+			private List<InvoiceLine> lines;
+
+			private int linesStart;
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < end;
+			}
+
+			@Override
+			public InvoiceLine next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if (lines == null || next - linesStart == lines.size()) {
+					linesStart = next;
+					lines = readChunk(next);
+				}
+				return lines.get(next++ - linesStart);
+			}
+		};
+	}
+
+	/**
+	 * Lines stay on the heap until all of them are in the file; if writing
+	 * fails the file is deleted and lines are kept on the heap.
+	 */
+	private void spill() {
+		boolean spilled = false;
+		try {
+			file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+			size = 0;
+			for (InvoiceLine line : heapLines) {
+				append(line);
+			}
+			writePending();
+			spilled = true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			if (spilled) {
+				heapLines = null;
+			} else {
+				if (file != null) {
+					file.delete();
+					file = null;
+				}
+				pending.reset();
+				position = 0;
+				size = heapLines.size();
+			}
+		}
+	}
+
+	private void append(InvoiceLine line) throws IOException {
+		if (size % CHUNK_SIZE == 0) {
+			int checkpoint = size / CHUNK_SIZE;
+			if (checkpoint == checkpoints.length) {
+				checkpoints = Arrays.copyOf(checkpoints, checkpoint * 2);
+			}
+			checkpoints[checkpoint] = position;
+		}
+		record.reset();
+		InvoiceLineCodec.write(line, recordOut);
+		recordOut.flush();
+		pendingOut.writeInt(record.size());
+		record.writeTo(pending);
+		position += 4 + record.size();
+		size++;
+		if (pending.size() >= BUFFER_SIZE) {
+			writePending();
+		}
+	}
+
+	private void writePending() throws IOException {
+		if (pending.size() > 0) {
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				pending.writeTo(out);
+			}
+			pending.reset();
+		}
+	}
+
+	/**
+	 * Reads up to {@value #CHUNK_SIZE} lines from <code>start</code>, a
+	 * multiple of it.
+	 */
+	private List<InvoiceLine> readChunk(int start) {
+		int count = Math.min(CHUNK_SIZE, size - start);
+		List<InvoiceLine> lines = new ArrayList<InvoiceLine>(count);
+		try {
+			writePending();
+			FileInputStream file = new FileInputStream(this.file);
+			try {
+				file.getChannel().position(checkpoints[start / CHUNK_SIZE]);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file, BUFFER_SIZE));
+				for (int i = 0; i < count; i++) {
+					in.readInt();
+					lines.add(InvoiceLineCodec.read(in));
+				}
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return lines;
+	}
+}
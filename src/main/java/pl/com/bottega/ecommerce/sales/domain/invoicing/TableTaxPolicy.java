@@ -0,0 +1,41 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.time.Clock;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Flat tax rate per product type, taken from a compiled
+ * {@link TaxRateTable}.<br>
+ * {@link #update(TaxRateTable)} swaps the whole table at once; issuing
+ * threads only read a volatile reference and never block.
+ */
+public class TableTaxPolicy implements TaxPolicy {
+
+	private volatile TaxRateTable table;
+
+	private Clock clock;
+
+	public TableTaxPolicy(TaxRateTable table) {
+		this(table, Clock.systemUTC());
+	}
+
+	public TableTaxPolicy(TaxRateTable table, Clock clock) {
+		this.table = table;
+		this.clock = clock;
+	}
+
+	@Override
+	public Tax calculateTax(ProductType productType, Money net) {
+		return table.calculateTax(productType, net, clock.millis());
+	}
+
+	public void update(TaxRateTable table) {
+		this.table = table;
+	}
+
+	public TaxRateTable getTable() {
+		return table;
+	}
+}
@@ -0,0 +1,61 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.Date;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
+
+/**
+ * Compiled, immutable flat tax rates per {@link ProductType} with effective
+ * dates.<br>
+ * Rates are kept in an array indexed by <code>ProductType.ordinal()</code>,
+ * each slot sorted by effective date; descriptions are built once when the
+ * table is compiled. Use {@link TaxRateTableBuilder} to create one.
+ */
+public class TaxRateTable {
+
+	private final ScheduledRate[][] ratesByType;
+
+	TaxRateTable(ScheduledRate[][] ratesByType) {
+		this.ratesByType = ratesByType;
+	}
+
+	/**
+	 * @param now time in millis used to choose the effective rate
+	 * @throws IllegalStateException if no rate is effective for the type
+	 */
+	public Tax calculateTax(ProductType productType, Money net, long now) {
+		ScheduledRate rate = effectiveRate(productType, now);
+		return new Tax(net.multiplyBy(rate.rate), rate.description);
+	}
+
+	public Rate getRate(ProductType productType, Date date) {
+		return effectiveRate(productType, date.getTime()).rate;
+	}
+
+	private ScheduledRate effectiveRate(ProductType productType, long now) {
+		ScheduledRate[] rates = ratesByType[productType.ordinal()];
+		for (int i = rates.length - 1; i >= 0; i--) {
+			if (rates[i].effectiveFrom <= now) {
+				return rates[i];
+			}
+		}
+		throw new IllegalStateException("No tax rate for " + productType + " at " + new Date(now));
+	}
+
+	static final class ScheduledRate {
+
+		final long effectiveFrom;
+
+		final Rate rate;
+
+		final String description;
+
+		ScheduledRate(long effectiveFrom, Rate rate, String description) {
+			this.effectiveFrom = effectiveFrom;
+			this.rate = rate;
+			this.description = description;
+		}
+	}
+}
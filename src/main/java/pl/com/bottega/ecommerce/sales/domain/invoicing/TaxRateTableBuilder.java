@@ -0,0 +1,74 @@
+package pl.com.bottega.ecommerce.sales.domain.invoicing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.com.bottega.ecommerce.sales.domain.invoicing.TaxRateTable.ScheduledRate;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
+
+public class TaxRateTableBuilder {
+
+	private Map<ProductType, List<ScheduledRate>> rates = new EnumMap<ProductType, List<ScheduledRate>>(ProductType.class);
+
+	public TaxRateTableBuilder() {
+	}
+
+	/**
+	 * Rate effective since ever, described as its percentage, e.g. "23%".
+	 */
+	public TaxRateTableBuilder withRate(ProductType productType, Rate rate) {
+		return withRate(productType, rate, new Date(Long.MIN_VALUE), rate.toString());
+	}
+
+	public TaxRateTableBuilder withRate(ProductType productType, Rate rate, Date effectiveFrom) {
+		return withRate(productType, rate, effectiveFrom, rate.toString());
+	}
+
+	public TaxRateTableBuilder withRate(ProductType productType, Rate rate, Date effectiveFrom, String description) {
+		List<ScheduledRate> scheduled = rates.get(productType);
+		if (scheduled == null) {
+			scheduled = new ArrayList<ScheduledRate>();
+			rates.put(productType, scheduled);
+		}
+		scheduled.add(new ScheduledRate(effectiveFrom.getTime(), rate, description));
+		return this;
+	}
+
+	public TaxRateTable build() {
+		Map<String, String> descriptions = new HashMap<String, String>();
+		ScheduledRate[][] ratesByType = new ScheduledRate[ProductType.values().length][];
+
+		for (ProductType productType : ProductType.values()) {
+			List<ScheduledRate> scheduled = rates.get(productType);
+			if (scheduled == null) {
+				ratesByType[productType.ordinal()] = new ScheduledRate[0];
+				continue;
+			}
+
+			ScheduledRate[] compiled = new ScheduledRate[scheduled.size()];
+			for (int i = 0; i < compiled.length; i++) {
+				ScheduledRate rate = scheduled.get(i);
+				compiled[i] = new ScheduledRate(rate.effectiveFrom, rate.rate, intern(descriptions, rate.description));
+			}
+			Arrays.sort(compiled, (a, b) -> Long.compare(a.effectiveFrom, b.effectiveFrom));
+			ratesByType[productType.ordinal()] = compiled;
+		}
+
+		return new TaxRateTable(ratesByType);
+	}
+
+	private static String intern(Map<String, String> descriptions, String description) {
+		String interned = descriptions.get(description);
+		if (interned == null) {
+			descriptions.put(description, description);
+			interned = description;
+		}
+		return interned;
+	}
+}
@@ -1,8 +1,27 @@
 package pl.com.bottega.ecommerce.sales.domain.offer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
 
 public interface DiscountPolicy {
 	public Discount applyDiscount(Product product, int quantity, Money regularCost);
+
+	/**
+	 * Prices a whole reservation at once. Override when a call has a high
+	 * fixed cost (e.g. a remote engine) or lookups can be shared across
+	 * items; by default calls {@link #applyDiscount(Product, int, Money)} for
+	 * every request.
+	 * 
+	 * @return discounts in order of the requests, null for no discount
+	 */
+	public default List<Discount> applyDiscounts(List<DiscountRequest> requests) {
+		List<Discount> discounts = new ArrayList<Discount>(requests.size());
+		for (DiscountRequest request : requests) {
+			discounts.add(applyDiscount(request.getProduct(), request.getQuantity(), request.getRegularCost()));
+		}
+		return discounts;
+	}
 }
@@ -0,0 +1,35 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Arguments of a single {@link DiscountPolicy#applyDiscount(Product, int, Money)}
+ * call within a batch.
+ */
+public class DiscountRequest {
+
+	private final Product product;
+
+	private final int quantity;
+
+	private final Money regularCost;
+
+	public DiscountRequest(Product product, int quantity, Money regularCost) {
+		this.product = product;
+		this.quantity = quantity;
+		this.regularCost = regularCost;
+	}
+
+	public Product getProduct() {
+		return product;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public Money getRegularCost() {
+		return regularCost;
+	}
+}
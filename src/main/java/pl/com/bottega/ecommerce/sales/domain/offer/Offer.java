@@ -1,9 +1,13 @@
 package pl.com.bottega.ecommerce.sales.domain.offer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferComparison.Difference;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
 
 public class Offer {
 private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
@@ -57,26 +61,59 @@ private List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 	 * @return
 	 */
 	public boolean sameAs(Offer seenOffer, double delta) {
-		if (! (availabeItems.size() == seenOffer.availabeItems.size()))
-			return false;
+		return sameAs(seenOffer, Rate.percent(delta));
+	}
+
+	/**
+	 * 
+	 * @param seenOffer
+	 * @param tolerance acceptable difference of every item
+	 * @return
+	 */
+	public boolean sameAs(Offer seenOffer, Rate tolerance) {
+		return compare(seenOffer, tolerance).isSame();
+	}
+
+	/**
+	 * Stops at the first difference. Items are matched by product, by
+	 * position while both offers list them in the same order, through an
+	 * index of the seen offer otherwise.
+	 * 
+	 * @param seenOffer
+	 * @param tolerance acceptable difference of every item
+	 * @return
+	 */
+	public OfferComparison compare(Offer seenOffer, Rate tolerance) {
+		List<OfferItem> seenItems = seenOffer.availabeItems;
+		if (availabeItems.size() != seenItems.size())
+			return new OfferComparison(Difference.ITEM_COUNT, null, null);
 		
-		for (OfferItem item : availabeItems) {
-			OfferItem sameItem = seenOffer.findItem(item.getProductData().getProductId());
-			if (sameItem == null)
-				return false;
-			if (!sameItem.sameAs(item, delta))
-				return false;
+		Map<Id, OfferItem> seenIndex = null;
+		for (int i = 0; i < availabeItems.size(); i++) {
+			OfferItem item = availabeItems.get(i);
+			Id productId = item.getProductData().getProductId();
+			OfferItem sameItem = seenItems.get(i);
+			if (!sameItem.getProductData().getProductId().equals(productId)) {
+				if (seenIndex == null)
+					seenIndex = seenOffer.indexAvailableItems();
+				sameItem = seenIndex.get(productId);
+				if (sameItem == null)
+					return new OfferComparison(Difference.MISSING_ITEM, item, null);
+			}
+			Difference difference = item.differenceFrom(sameItem, tolerance);
+			if (difference != Difference.NONE)
+				return new OfferComparison(difference, item, sameItem);
 		}
 		
-		return true;
+		return OfferComparison.SAME;
 	}
 
-	private OfferItem findItem(Id productId) {
-		for (OfferItem item : availabeItems){
-			if (item.getProductData().getProductId().equals(productId))
-				return item;
+	private Map<Id, OfferItem> indexAvailableItems() {
+		Map<Id, OfferItem> index = new HashMap<Id, OfferItem>(availabeItems.size() * 2);
+		for (OfferItem item : availabeItems) {
+			index.putIfAbsent(item.getProductData().getProductId(), item);
 		}
-		return null;
+		return index;
 	}
 	
 
@@ -0,0 +1,58 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+/**
+ * Outcome of comparing an offer with the one seen by the client: either the
+ * same, or the first difference found.
+ */
+public class OfferComparison {
+
+	public enum Difference {
+		NONE, ITEM_COUNT, MISSING_ITEM, PRODUCT, QUANTITY, TOTAL_COST
+	}
+
+	static final OfferComparison SAME = new OfferComparison(Difference.NONE, null, null);
+
+	private final Difference difference;
+
+	private final OfferItem item;
+
+	private final OfferItem seenItem;
+
+	OfferComparison(Difference difference, OfferItem item, OfferItem seenItem) {
+		this.difference = difference;
+		this.item = item;
+		this.seenItem = seenItem;
+	}
+
+	public boolean isSame() {
+		return difference == Difference.NONE;
+	}
+
+	public Difference getDifference() {
+		return difference;
+	}
+
+	/**
+	 * @return differing item of the current offer; null if the offers are
+	 *         the same or differ in item count
+	 */
+	public OfferItem getItem() {
+		return item;
+	}
+
+	/**
+	 * @return item of the seen offer for the same product; null if there is
+	 *         none
+	 */
+	public OfferItem getSeenItem() {
+		return seenItem;
+	}
+
+	@Override
+	public String toString() {
+		if (isSame()) {
+			return "same";
+		}
+		return difference + (item == null ? "" : " of " + item.getProductData().getProductId());
+	}
+}
@@ -0,0 +1,236 @@
+package pl.com.bottega.ecommerce.sales.domain.offer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Changes turning one offer into another, keyed by product, so that a client
+ * holding the previous offer can be sent only what changed.<br>
+ * Computed in linear time through a product index of the previous offer.
+ * Unchanged items are not listed; an item both repriced and moved between
+ * available and unavailable is one change of both kinds.
+ */
+public class OfferDiff {
+
+	private static final int ADDED = 1;
+
+	private static final int REMOVED = 2;
+
+	private static final int REPRICED = 4;
+
+	private static final int AVAILABILITY_CHANGED = 8;
+
+	public static class Change {
+
+		private final Id productId;
+
+		private final int kinds;
+
+		private final OfferItem item;
+
+		private final boolean available;
+
+		private Change(Id productId, int kinds, OfferItem item, boolean available) {
+			this.productId = productId;
+			this.kinds = kinds;
+			this.item = item;
+			this.available = available;
+		}
+
+		public Id getProductId() {
+			return productId;
+		}
+
+		/**
+		 * @return item of the current offer, null if removed
+		 */
+		public OfferItem getItem() {
+			return item;
+		}
+
+		/**
+		 * @return whether the item is available in the current offer
+		 */
+		public boolean isAvailable() {
+			return available;
+		}
+
+		public boolean isAdded() {
+			return (kinds & ADDED) != 0;
+		}
+
+		public boolean isRemoved() {
+			return (kinds & REMOVED) != 0;
+		}
+
+		/**
+		 * @return true if price, quantity, discount or total cost changed
+		 */
+		public boolean isRepriced() {
+			return (kinds & REPRICED) != 0;
+		}
+
+		public boolean isAvailabilityChanged() {
+			return (kinds & AVAILABILITY_CHANGED) != 0;
+		}
+
+		@Override
+		public String toString() {
+			return productId + (isAdded() ? " added" : "") + (isRemoved() ? " removed" : "")
+					+ (isRepriced() ? " repriced" : "") + (isAvailabilityChanged() ? " availability changed" : "");
+		}
+	}
+
+	private final List<Change> changes;
+
+	private OfferDiff(List<Change> changes) {
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	public static OfferDiff between(Offer previous, Offer current) {
+		Map<Id, Change> previousItems = new HashMap<Id, Change>(
+				(previous.getAvailabeItems().size() + previous.getUnavailableItems().size()) * 2);
+		index(previous.getAvailabeItems(), true, previousItems);
+		index(previous.getUnavailableItems(), false, previousItems);
+
+		List<Change> changes = new ArrayList<Change>();
+		diff(current.getAvailabeItems(), true, previousItems, changes);
+		diff(current.getUnavailableItems(), false, previousItems, changes);
+		// what is left was not matched by any current item
+		for (Change removed : previousItems.values()) {
+			changes.add(new Change(removed.productId, REMOVED, null, false));
+		}
+		return new OfferDiff(changes);
+	}
+
+	private static void index(List<OfferItem> items, boolean available, Map<Id, Change> index) {
+		for (OfferItem item : items) {
+			Id productId = item.getProductData().getProductId();
+			index.putIfAbsent(productId, new Change(productId, 0, item, available));
+		}
+	}
+
+	private static void diff(List<OfferItem> items, boolean available, Map<Id, Change> previousItems,
+			List<Change> changes) {
+		for (OfferItem item : items) {
+			Id productId = item.getProductData().getProductId();
+			Change previous = previousItems.remove(productId);
+			int kinds;
+			if (previous == null) {
+				kinds = ADDED;
+			} else {
+				kinds = (previous.item.equals(item) ? 0 : REPRICED)
+						| (previous.available == available ? 0 : AVAILABILITY_CHANGED);
+			}
+			if (kinds != 0) {
+				changes.add(new Change(productId, kinds, item, available));
+			}
+		}
+	}
+
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	public List<Change> getAdded() {
+		return select(ADDED);
+	}
+
+	public List<Change> getRemoved() {
+		return select(REMOVED);
+	}
+
+	public List<Change> getRepriced() {
+		return select(REPRICED);
+	}
+
+	public List<Change> getAvailabilityChanged() {
+		return select(AVAILABILITY_CHANGED);
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	private List<Change> select(int kind) {
+		List<Change> selected = new ArrayList<Change>();
+		for (Change change : changes) {
+			if ((change.kinds & kind) != 0) {
+				selected.add(change);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Rebuilds the current offer from the previous one. Items keep their
+	 * previous position unless added or moved, which go last.
+	 */
+	public Offer applyTo(Offer previous) {
+		Map<Id, OfferItem> available = new LinkedHashMap<Id, OfferItem>();
+		Map<Id, OfferItem> unavailable = new LinkedHashMap<Id, OfferItem>();
+		for (OfferItem item : previous.getAvailabeItems()) {
+			available.put(item.getProductData().getProductId(), item);
+		}
+		for (OfferItem item : previous.getUnavailableItems()) {
+			unavailable.put(item.getProductData().getProductId(), item);
+		}
+		for (Change change : changes) {
+			if (change.isRemoved() || change.isAvailabilityChanged()) {
+				available.remove(change.productId);
+				unavailable.remove(change.productId);
+			}
+			if (!change.isRemoved()) {
+				(change.available ? available : unavailable).put(change.productId, change.item);
+			}
+		}
+		return new Offer(new ArrayList<OfferItem>(available.values()), new ArrayList<OfferItem>(unavailable.values()));
+	}
+
+	/**
+	 * Writes compact binary form: per change a byte of its kinds followed by
+	 * the product id of a removed item or availability and the current item.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(changes.size());
+		for (Change change : changes) {
+			out.writeByte(change.kinds);
+			if (change.isRemoved()) {
+				change.productId.writeTo(out);
+			} else {
+				out.writeBoolean(change.available);
+				change.item.writeTo(out);
+			}
+		}
+	}
+
+	public static OfferDiff readFrom(DataInput in) throws IOException {
+		int size = in.readInt();
+		List<Change> changes = new ArrayList<Change>(size);
+		for (int i = 0; i < size; i++) {
+			int kinds = in.readByte();
+			if ((kinds & REMOVED) != 0) {
+				changes.add(new Change(Id.readFrom(in), kinds, null, false));
+			} else {
+				boolean available = in.readBoolean();
+				OfferItem item = OfferItem.readFrom(in);
+				changes.add(new Change(item.getProductData().getProductId(), kinds, item, available));
+			}
+		}
+		return new OfferDiff(changes);
+	}
+
+	@Override
+	public String toString() {
+		return changes.toString();
+	}
+}
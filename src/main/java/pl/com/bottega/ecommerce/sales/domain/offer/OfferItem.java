@@ -15,8 +15,15 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.offer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferComparison.Difference;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
 
 public class OfferItem {
 private ProductData productData;
@@ -37,11 +44,11 @@ private ProductData productData;
 		this.quantity = quantity;
 		this.discount = discount;
 		
-		Money discountValue = Money.ZERO;
+		MoneyAccumulator cost = new MoneyAccumulator().add(productData.getPrice(), quantity);
 		if (discount != null)
-			 discountValue =  discountValue.subtract(discount.getValue());
+			cost.add(discount.getValue());
 		
-		this.totalCost = productData.getPrice().multiplyBy(quantity).subtract(discountValue);
+		this.totalCost = cost.toMoney();
 	}
 
 	public ProductData getProductData() {
@@ -60,6 +67,33 @@ private ProductData productData;
 		return quantity;
 	}
 
+	/**
+	 * Writes compact binary form of the item; the total cost is not written
+	 * but computed again when read.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		productData.writeTo(out);
+		out.writeInt(quantity);
+		out.writeBoolean(discount != null);
+		if (discount != null) {
+			out.writeBoolean(discount.getCause() != null);
+			if (discount.getCause() != null)
+				out.writeUTF(discount.getCause());
+			discount.getValue().writeTo(out);
+		}
+	}
+
+	public static OfferItem readFrom(DataInput in) throws IOException {
+		ProductData productData = ProductData.readFrom(in);
+		int quantity = in.readInt();
+		Discount discount = null;
+		if (in.readBoolean()) {
+			String cause = in.readBoolean() ? in.readUTF() : null;
+			discount = new Discount(cause, Money.readFrom(in));
+		}
+		return new OfferItem(productData, quantity, discount);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -110,27 +144,30 @@ private ProductData productData;
 	 * @return
 	 */
 	public boolean sameAs(OfferItem item, double delta) {
+		return sameAs(item, Rate.percent(delta));
+	}
+
+	/**
+	 * 
+	 * @param item
+	 * @param tolerance acceptable difference relative to the greater total cost
+	 * @return
+	 */
+	public boolean sameAs(OfferItem item, Rate tolerance) {
+		return differenceFrom(item, tolerance) == Difference.NONE;
+	}
+
+	Difference differenceFrom(OfferItem item, Rate tolerance) {
 		if (! productData.equals(item.productData))
-			return false;
+			return Difference.PRODUCT;
 		
 		if (quantity != item.quantity)
-			return false;
-		
-		
-		Money max, min;
-		if (totalCost.greaterThan(item.totalCost)){
-			max = totalCost;
-			min = item.totalCost;
-		}
-		else{
-			max = item.totalCost;
-			min = totalCost;
-		}
+			return Difference.QUANTITY;
 		
-		Money difference = max.subtract(min);
-		Money acceptableDelta = max.multiplyBy(delta / 100); 
+		if (!totalCost.differsLessThan(item.totalCost, tolerance))
+			return Difference.TOTAL_COST;
 		
-		return acceptableDelta.greaterThan(difference);
+		return Difference.NONE;
 	}
 
 	
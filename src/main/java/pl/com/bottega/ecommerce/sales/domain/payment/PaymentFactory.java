@@ -17,13 +17,25 @@ package pl.com.bottega.ecommerce.sales.domain.payment;
 
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.IdGenerator;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.TimeOrderedIdGenerator;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
 
 public class PaymentFactory {
 
+	private IdGenerator idGenerator;
+
+	public PaymentFactory() {
+		this(new TimeOrderedIdGenerator());
+	}
+
+	public PaymentFactory(IdGenerator idGenerator) {
+		this.idGenerator = idGenerator;
+	}
+
 	public Payment createPayment(ClientData clientData, Money amount) {
 
-		Id aggregateId = Id.generate();
+		Id aggregateId = idGenerator.generate();
 
 		return new Payment(aggregateId, clientData, amount);
 	}
@@ -0,0 +1,314 @@
+package pl.com.bottega.ecommerce.sales.domain.productscatalog;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Read-through cache of products loaded by another repository.<br>
+ * The cache holds at most <code>maximumSize</code> products, split into
+ * independently locked segments. Each segment is a segmented LRU: a product
+ * enters a probation part and is promoted to a protected part when read
+ * again, so products read once (e.g. by a catalog scan) evict each other
+ * rather than the frequently ordered ones. Products expire
+ * <code>timeToLive</code> after being loaded.<br>
+ * Concurrent misses for the same product are coalesced: the decorated
+ * repository is called once, outside of any lock, and the other callers wait
+ * for its result. Products not found are not cached.<br>
+ * Cached products are shared by callers; call {@link #invalidate(Id)} once a
+ * product marked as removed or repriced is stored.
+ */
+public class CachingProductRepository implements ProductRepository {
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Share of a segment kept for products read more than once, in percent.
+	 */
+	private static final int PROTECTED_PERCENT = 80;
+
+	/**
+	 * Marks a caller waiting for a load started by another one.
+	 */
+	private static final long NOT_LOADING = -1;
+
+	private final ProductRepository productRepository;
+
+	private final long timeToLiveMillis;
+
+	private final Clock clock;
+
+	private final Segment[] segments;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder loads = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public CachingProductRepository(ProductRepository productRepository, int maximumSize, long timeToLive,
+			TimeUnit unit) {
+		this(productRepository, maximumSize, timeToLive, unit, Clock.systemUTC());
+	}
+
+	public CachingProductRepository(ProductRepository productRepository, int maximumSize, long timeToLive,
+			TimeUnit unit, Clock clock) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Cache size has to be positive: " + maximumSize);
+		}
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("Time to live has to be positive: " + timeToLive);
+		}
+		this.productRepository = productRepository;
+		this.timeToLiveMillis = unit.toMillis(timeToLive);
+		this.clock = clock;
+		int segmentCount = Math.min(SEGMENTS, maximumSize);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			int segmentSize = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	@Override
+	public Product load(Id productId) {
+		Segment segment = segmentFor(productId);
+		long now = clock.millis();
+		CompletableFuture<Product> loading;
+		long loadingIn;
+		synchronized (segment) {
+			Product product = segment.get(productId, now);
+			if (product != null) {
+				hits.increment();
+				return product;
+			}
+			misses.increment();
+			loading = segment.loading.get(productId);
+			if (loading == null) {
+				loading = new CompletableFuture<Product>();
+				segment.loading.put(productId, loading);
+				loadingIn = segment.generation;
+			} else {
+				loadingIn = NOT_LOADING;
+			}
+		}
+		if (loadingIn == NOT_LOADING) {
+			return await(loading);
+		}
+
+		Product product;
+		try {
+			loads.increment();
+			product = productRepository.load(productId);
+		} catch (RuntimeException | Error e) {
+			synchronized (segment) {
+				segment.loading.remove(productId, loading);
+			}
+			loading.completeExceptionally(e);
+			throw e;
+		}
+		synchronized (segment) {
+			segment.loading.remove(productId, loading);
+			if (product != null && loadingIn == segment.generation) {
+				segment.put(productId, product, clock.millis() + timeToLiveMillis);
+			}
+		}
+		loading.complete(product);
+		return product;
+	}
+
+	/**
+	 * Not cached: always queries the decorated repository.
+	 */
+	@Override
+	public List<Product> findProductWhereBestBeforeExpiredIn(int days) {
+		return productRepository.findProductWhereBestBeforeExpiredIn(days);
+	}
+
+	/**
+	 * Drops the product, also when it is being loaded: a load started before
+	 * the invalidation is not cached.
+	 */
+	public void invalidate(Id productId) {
+		Segment segment = segmentFor(productId);
+		synchronized (segment) {
+			segment.remove(productId);
+		}
+	}
+
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return calls to the decorated repository
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.probation.size() + segment.protectedEntries.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentFor(Id productId) {
+		int hash = productId.hashCode();
+		hash ^= hash >>> 16;
+		return segments[(hash & Integer.MAX_VALUE) % segments.length];
+	}
+
+	private static Product await(CompletableFuture<Product> loading) {
+		try {
+			return loading.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Guarded by its own monitor.
+	 */
+	private class Segment {
+
+		private final int capacity;
+
+		private final int protectedCapacity;
+
+		/**
+		 * Products read once, oldest first.
+		 */
+		private final LinkedHashMap<Id, Entry> probation = new LinkedHashMap<Id, Entry>();
+
+		/**
+		 * Products read again, least recently used first.
+		 */
+		private final LinkedHashMap<Id, Entry> protectedEntries = new LinkedHashMap<Id, Entry>(16, 0.75f, true);
+
+		private final Map<Id, CompletableFuture<Product>> loading = new HashMap<Id, CompletableFuture<Product>>();
+
+		/**
+		 * Incremented on invalidation, so products loaded before it are not
+		 * cached after it.
+		 */
+		private long generation;
+
+		Segment(int capacity) {
+			this.capacity = capacity;
+			this.protectedCapacity = Math.max(1, capacity * PROTECTED_PERCENT / 100);
+		}
+
+		Product get(Id productId, long now) {
+			Entry entry = protectedEntries.get(productId);
+			if (entry == null) {
+				entry = probation.get(productId);
+				if (entry == null) {
+					return null;
+				}
+				if (entry.expiresAt > now) {
+					promote(productId, entry);
+				}
+			}
+			if (entry.expiresAt <= now) {
+				protectedEntries.remove(productId);
+				probation.remove(productId);
+				return null;
+			}
+			return entry.product;
+		}
+
+		void put(Id productId, Product product, long expiresAt) {
+			protectedEntries.remove(productId);
+			probation.remove(productId);
+			probation.put(productId, new Entry(product, expiresAt));
+			if (probation.size() + protectedEntries.size() > capacity) {
+				// the product just put is not evicted while protected ones remain
+				Iterator<Entry> eldest = (probation.size() > 1 || protectedEntries.isEmpty() ? probation
+						: protectedEntries).values().iterator();
+				eldest.next();
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+
+		void remove(Id productId) {
+			generation++;
+			protectedEntries.remove(productId);
+			probation.remove(productId);
+			loading.remove(productId);
+		}
+
+		void clear() {
+			generation++;
+			protectedEntries.clear();
+			probation.clear();
+			loading.clear();
+		}
+
+		/**
+		 * Moves the entry to the protected part, demoting the least recently
+		 * used protected entry to probation if it is full.
+		 */
+		private void promote(Id productId, Entry entry) {
+			probation.remove(productId);
+			protectedEntries.put(productId, entry);
+			if (protectedEntries.size() > protectedCapacity) {
+				Iterator<Map.Entry<Id, Entry>> eldest = protectedEntries.entrySet().iterator();
+				Map.Entry<Id, Entry> demoted = eldest.next();
+				eldest.remove();
+				probation.put(demoted.getKey(), demoted.getValue());
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final Product product;
+
+		private final long expiresAt;
+
+		Entry(Product product, long expiresAt) {
+			this.product = product;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
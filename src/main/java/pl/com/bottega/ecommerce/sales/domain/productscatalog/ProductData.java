@@ -15,6 +15,9 @@
  */
 package pl.com.bottega.ecommerce.sales.domain.productscatalog;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Date;
 
 
@@ -62,6 +65,30 @@ public class ProductData {
 		return type;
 	}
 
+	/**
+	 * Writes compact binary form of the snapshot.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		productId.writeTo(out);
+		price.writeTo(out);
+		out.writeBoolean(name != null);
+		if (name != null) {
+			out.writeUTF(name);
+		}
+		out.writeByte(type.ordinal());
+		out.writeLong(snapshotDate == null ? Long.MIN_VALUE : snapshotDate.getTime());
+	}
+
+	public static ProductData readFrom(DataInput in) throws IOException {
+		Id productId = Id.readFrom(in);
+		Money price = Money.readFrom(in);
+		String name = in.readBoolean() ? in.readUTF() : null;
+		ProductType type = ProductType.values()[in.readByte()];
+		long snapshotTime = in.readLong();
+		Date snapshotDate = snapshotTime == Long.MIN_VALUE ? null : new Date(snapshotTime);
+		return new ProductData(productId, price, name, type, snapshotDate);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
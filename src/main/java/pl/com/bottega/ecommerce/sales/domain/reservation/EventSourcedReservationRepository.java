@@ -0,0 +1,657 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation.ReservationStatus;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+/**
+ * Repository persisting reservation changes as events in a local segmented
+ * log.<br>
+ * A save appends one record (length, CRC32, body) holding the events that
+ * turn the stored state into the saved one: created, item added, quantity
+ * changed, closed. Current states are kept in memory, so loads never touch
+ * the disk. Every <code>snapshotInterval</code> saves all states are written
+ * to a snapshot in the background and the log segments it covers are
+ * deleted; opening reads the latest snapshot and replays the log after it,
+ * so recovery reads at most one interval of records.<br>
+ * Saves are compare and set on the version, as in
+ * {@link InMemoryReservationRepository}. Records are handed to the OS but
+ * not forced unless <code>forceOnSave</code> is set, which makes them
+ * survive a process crash but not a power loss; a torn record at the end of
+ * the log is dropped on open. A record whose write fails is cut off the log
+ * at once; if that is not possible the repository rejects further saves.<br>
+ * Products of rebuilt reservations are recreated from the data they had
+ * when added.
+ */
+public class EventSourcedReservationRepository implements ReservationRepository, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(EventSourcedReservationRepository.class.getName());
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 10000;
+
+	private static final byte END = 0;
+
+	private static final byte CREATED = 1;
+
+	private static final byte ITEM_ADDED = 2;
+
+	private static final byte QUANTITY_CHANGED = 3;
+
+	private static final byte CLOSED = 4;
+
+	private static final int HEADER_SIZE = 8;
+
+	private static final int SNAPSHOT_MAGIC = 0x52535631;
+
+	private static final String SEGMENT_PREFIX = "reservations-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	private static final String SNAPSHOT_SUFFIX = ".snap";
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final int snapshotInterval;
+
+	private final boolean forceOnSave;
+
+	private final ConcurrentHashMap<Id, Reservation> states = new ConcurrentHashMap<Id, Reservation>();
+
+	/**
+	 * Serializes appends; a state is published under it right after its
+	 * record is written, so records of a reservation follow its versions.
+	 */
+	private final Object logLock = new Object();
+
+	/**
+	 * Guarded by {@link #logLock}.
+	 */
+	private FileChannel segment;
+
+	private int segmentNumber;
+
+	private long segmentPosition;
+
+	private final AtomicInteger savesSinceSnapshot = new AtomicInteger();
+
+	private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+	private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "reservation-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile boolean closed;
+
+	/**
+	 * Set when a failed write could not be rolled back; the repository then
+	 * rejects all saves.
+	 */
+	private volatile IOException failure;
+
+	private final ThreadLocal<RecordBuffer> recordBuffers = new ThreadLocal<RecordBuffer>() {
+		@Override
+		protected RecordBuffer initialValue() {
+			return new RecordBuffer();
+		}
+	};
+
+	public EventSourcedReservationRepository(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOT_INTERVAL, false);
+	}
+
+	public EventSourcedReservationRepository(File directory, int segmentSize, int snapshotInterval,
+			boolean forceOnSave) throws IOException {
+		if (segmentSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+		}
+		if (snapshotInterval < 1) {
+			throw new IllegalArgumentException("Snapshot interval has to be positive: " + snapshotInterval);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create repository directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.snapshotInterval = snapshotInterval;
+		this.forceOnSave = forceOnSave;
+		openSegment(recover());
+	}
+
+	/**
+	 * @return copy of the stored reservation, null if there is none
+	 */
+	@Override
+	public Reservation load(Id reservationId) {
+		Reservation state = states.get(reservationId);
+		return state == null ? null : state.copy();
+	}
+
+	/**
+	 * The record is encoded and the version checked outside of any lock;
+	 * only writing the record and publishing the state are serialized, and
+	 * the record is forced after that.
+	 */
+	@Override
+	public void save(Reservation reservation) {
+		if (closed) {
+			throw new IllegalStateException("Repository is closed");
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Reservation log is broken", failure);
+		}
+		Reservation stored = states.get(reservation.getId());
+		checkVersion(reservation.getId(), reservation.getVersion(), stored);
+		Reservation state = reservation.copy();
+		state.incrementVersion();
+		FileChannel written = append(stored, state);
+		if (forceOnSave) {
+			force(written);
+		}
+		reservation.incrementVersion();
+		if (savesSinceSnapshot.incrementAndGet() >= snapshotInterval && !closed) {
+			try {
+				snapshotExecutor.execute(this::snapshotInBackground);
+			} catch (RejectedExecutionException e) {
+				// closed meanwhile
+			}
+		}
+	}
+
+	public int size() {
+		return states.size();
+	}
+
+	/**
+	 * Writes all reservations to a new snapshot and deletes the log it
+	 * covers. Saves only wait for the log to be cut; the states are written
+	 * while they go on. Does nothing when another snapshot is being taken.
+	 * Taken in the background every <code>snapshotInterval</code> saves.
+	 */
+	public void snapshot() {
+		if (!snapshotting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			int number;
+			synchronized (logLock) {
+				roll();
+				number = segmentNumber;
+				savesSinceSnapshot.set(0);
+			}
+			// states are immutable once published; records of states saved
+			// after the cut are skipped on replay by their versions
+			List<Reservation> cut = new ArrayList<Reservation>(states.values());
+			writeSnapshot(number, cut);
+			for (int old : numbers(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+				if (old < number) {
+					Files.deleteIfExists(segmentFile(old).toPath());
+				}
+			}
+			for (int old : numbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+				if (old < number) {
+					Files.deleteIfExists(snapshotFile(old).toPath());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			snapshotting.set(false);
+		}
+	}
+
+	/**
+	 * Lets snapshots due in the background finish first.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		snapshotExecutor.shutdown();
+		try {
+			snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (logLock) {
+			if (segment.isOpen()) {
+				segment.force(false);
+				segment.close();
+			}
+		}
+	}
+
+	private void snapshotInBackground() {
+		if (savesSinceSnapshot.get() < snapshotInterval) {
+			return;
+		}
+		try {
+			snapshot();
+		} catch (RuntimeException e) {
+			// saves are in the log anyway; retried after another interval
+			LOGGER.log(Level.WARNING, "Reservation snapshot failed in " + directory, e);
+		}
+	}
+
+	private static void checkVersion(Id id, long version, Reservation stored) {
+		long storedVersion = stored == null ? 0 : stored.getVersion();
+		if (storedVersion != version) {
+			throw new OptimisticLockException(id, version, storedVersion);
+		}
+	}
+
+	/**
+	 * Writes the record and publishes the state unless another save of the
+	 * reservation got first.
+	 *
+	 * @return segment written to
+	 */
+	private FileChannel append(Reservation stored, Reservation state) {
+		RecordBuffer record = recordBuffers.get();
+		record.reset();
+		DataOutputStream out = new DataOutputStream(record);
+		try {
+			state.getId().writeTo(out);
+			out.writeLong(state.getVersion());
+			writeEvents(stored, state, out);
+			out.flush();
+
+			CRC32 crc = new CRC32();
+			record.updateChecksum(crc);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(record.size()).putInt((int) crc.getValue()).flip();
+			ByteBuffer body = record.asByteBuffer();
+			ByteBuffer[] buffers = { header, body };
+			int length = HEADER_SIZE + record.size();
+
+			synchronized (logLock) {
+				Reservation current = states.get(state.getId());
+				if (current != stored) {
+					checkVersion(state.getId(), state.getVersion() - 1, current);
+				}
+				if (segmentPosition > 0 && segmentPosition + length > segmentSize) {
+					roll();
+				}
+				try {
+					while (body.hasRemaining()) {
+						segment.write(buffers);
+					}
+				} catch (IOException e) {
+					discardTail(e);
+					throw e;
+				}
+				segmentPosition += length;
+				states.put(state.getId(), state);
+				return segment;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * A record that can not be forced has already been published and may be
+	 * followed by others, so it can not be taken back: the repository is
+	 * broken.
+	 */
+	private void force(FileChannel written) {
+		try {
+			written.force(false);
+		} catch (ClosedChannelException e) {
+			// closed by a roll or close, both forcing it first
+		} catch (IOException e) {
+			failure = e;
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeEvents(Reservation stored, Reservation state, DataOutput out) throws IOException {
+		if (stored == null) {
+			out.writeByte(CREATED);
+			out.writeByte(state.getStatus().ordinal());
+			writeClient(state.getClientData(), out);
+			writeDate(state.getCreateDate(), out);
+		}
+		for (ReservationItem item : state.getItems()) {
+			ReservationItem storedItem = stored == null ? null : stored.getItem(item.getProduct().getId());
+			if (storedItem == null) {
+				out.writeByte(ITEM_ADDED);
+				writeProduct(item.getProduct(), out);
+				out.writeInt(item.getQuantity());
+			} else if (storedItem.getQuantity() != item.getQuantity()) {
+				out.writeByte(QUANTITY_CHANGED);
+				item.getProduct().getId().writeTo(out);
+				out.writeInt(item.getQuantity());
+			}
+		}
+		if (stored != null && !stored.isClosed() && state.isClosed()) {
+			out.writeByte(CLOSED);
+		}
+		out.writeByte(END);
+	}
+
+	private void applyRecord(DataInput in) throws IOException {
+		Id id = Id.readFrom(in);
+		long version = in.readLong();
+		Reservation reservation = states.get(id);
+		if (reservation != null && reservation.getVersion() >= version) {
+			// already in the snapshot
+			return;
+		}
+		for (byte event = in.readByte(); event != END; event = in.readByte()) {
+			switch (event) {
+			case CREATED:
+				ReservationStatus status = ReservationStatus.values()[in.readByte()];
+				reservation = new Reservation(id, status, readClient(in), readDate(in));
+				break;
+			case ITEM_ADDED:
+				reservation.restoreItem(readProduct(in), in.readInt());
+				break;
+			case QUANTITY_CHANGED:
+				ReservationItem item = reservation.getItem(Id.readFrom(in));
+				item.changeQuantityBy(in.readInt() - item.getQuantity());
+				break;
+			case CLOSED:
+				reservation.close();
+				break;
+			default:
+				throw new IOException("Unknown reservation event " + event);
+			}
+		}
+		reservation.setRestoredVersion(version);
+		states.put(id, reservation);
+	}
+
+	/**
+	 * @return number of the segment to append to
+	 */
+	private int recover() throws IOException {
+		List<Integer> snapshots = numbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		int replayFrom = 0;
+		if (!snapshots.isEmpty()) {
+			replayFrom = snapshots.get(snapshots.size() - 1);
+			readSnapshot(snapshotFile(replayFrom));
+		}
+		List<Integer> segments = numbers(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		int next = replayFrom;
+		for (int i = 0; i < segments.size(); i++) {
+			int number = segments.get(i);
+			if (number < replayFrom) {
+				Files.deleteIfExists(segmentFile(number).toPath());
+			} else {
+				replay(segmentFile(number), i == segments.size() - 1);
+				next = number + 1;
+			}
+		}
+		return next;
+	}
+
+	private void replay(File file, boolean last) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer log = ByteBuffer.wrap(bytes);
+		while (log.remaining() >= HEADER_SIZE) {
+			int start = log.position();
+			int length = log.getInt();
+			int checksum = log.getInt();
+			boolean valid = length > 0 && length <= log.remaining();
+			if (valid) {
+				CRC32 crc = new CRC32();
+				crc.update(bytes, log.position(), length);
+				valid = (int) crc.getValue() == checksum;
+			}
+			if (!valid) {
+				log.position(start);
+				break;
+			}
+			applyRecord(new DataInputStream(new ByteArrayInputStream(bytes, log.position(), length)));
+			log.position(log.position() + length);
+		}
+		if (log.hasRemaining()) {
+			if (!last) {
+				throw new IOException("Corrupted reservation log " + file);
+			}
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(log.position());
+			}
+		}
+	}
+
+	private void writeSnapshot(int number, List<Reservation> reservations) throws IOException {
+		File temporary = new File(directory, SNAPSHOT_PREFIX + format(number) + ".tmp");
+		FileOutputStream file = new FileOutputStream(temporary);
+		try {
+			CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 64 * 1024));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(reservations.size());
+			for (Reservation reservation : reservations) {
+				reservation.getId().writeTo(out);
+				out.writeLong(reservation.getVersion());
+				out.writeByte(reservation.getStatus().ordinal());
+				writeClient(reservation.getClientData(), out);
+				writeDate(reservation.getCreateDate(), out);
+				out.writeInt(reservation.getItems().size());
+				for (ReservationItem item : reservation.getItems()) {
+					writeProduct(item.getProduct(), out);
+					out.writeInt(item.getQuantity());
+				}
+			}
+			out.flush();
+			out.writeInt((int) checked.getChecksum().getValue());
+			out.flush();
+			file.getChannel().force(true);
+		} finally {
+			file.close();
+		}
+		Files.move(temporary.toPath(), snapshotFile(number).toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void readSnapshot(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		if (bytes.length < 12) {
+			throw new IOException("Truncated reservation snapshot " + file);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+			throw new IOException("Corrupted reservation snapshot " + file);
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			throw new IOException("Not a reservation snapshot " + file);
+		}
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			Id id = Id.readFrom(in);
+			long version = in.readLong();
+			ReservationStatus status = ReservationStatus.values()[in.readByte()];
+			Reservation reservation = new Reservation(id, status, readClient(in), readDate(in));
+			int items = in.readInt();
+			for (int j = 0; j < items; j++) {
+				reservation.restoreItem(readProduct(in), in.readInt());
+			}
+			reservation.setRestoredVersion(version);
+			states.put(id, reservation);
+		}
+	}
+
+	/**
+	 * Called under {@link #logLock}.
+	 */
+	private void roll() throws IOException {
+		if (forceOnSave) {
+			segment.force(false);
+		}
+		segment.close();
+		openSegment(segmentNumber + 1);
+	}
+
+	/**
+	 * Cuts off what a failed write left after the last complete record, so
+	 * later records do not follow garbage; if that fails too the repository
+	 * is broken. Called under {@link #logLock}.
+	 */
+	private void discardTail(IOException cause) {
+		try {
+			if (!segment.isOpen()) {
+				segment = openChannel(segmentFile(segmentNumber).toPath(), StandardOpenOption.WRITE);
+			}
+			segment.truncate(segmentPosition);
+			segment.position(segmentPosition);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+			failure = cause;
+		}
+	}
+
+	private void openSegment(int number) throws IOException {
+		segment = openChannel(segmentFile(number).toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		segmentNumber = number;
+		segmentPosition = 0;
+	}
+
+	/**
+	 * Opens a log segment for appending.
+	 */
+	protected FileChannel openChannel(Path path, OpenOption... options) throws IOException {
+		return FileChannel.open(path, options);
+	}
+
+	private static void writeClient(ClientData client, DataOutput out) throws IOException {
+		client.getAggregateId().writeTo(out);
+		writeText(client.getName(), out);
+	}
+
+	private static ClientData readClient(DataInput in) throws IOException {
+		return new ClientData(Id.readFrom(in), readText(in));
+	}
+
+	private static void writeProduct(Product product, DataOutput out) throws IOException {
+		product.getId().writeTo(out);
+		product.getPrice().writeTo(out);
+		writeText(product.getName(), out);
+		out.writeByte(product.getProductType().ordinal());
+	}
+
+	private static Product readProduct(DataInput in) throws IOException {
+		Id id = Id.readFrom(in);
+		Money price = Money.readFrom(in);
+		String name = readText(in);
+		return new Product(id, price, name, ProductType.values()[in.readByte()]);
+	}
+
+	private static void writeDate(Date date, DataOutput out) throws IOException {
+		out.writeLong(date == null ? Long.MIN_VALUE : date.getTime());
+	}
+
+	private static Date readDate(DataInput in) throws IOException {
+		long time = in.readLong();
+		return time == Long.MIN_VALUE ? null : new Date(time);
+	}
+
+	private static void writeText(String text, DataOutput out) throws IOException {
+		out.writeBoolean(text != null);
+		if (text != null) {
+			out.writeUTF(text);
+		}
+	}
+
+	private static String readText(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private List<Integer> numbers(String prefix, String suffix) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(prefix) && name.endsWith(suffix)) {
+					String number = name.substring(prefix.length(), name.length() - suffix.length());
+					try {
+						numbers.add(Integer.parseInt(number));
+					} catch (NumberFormatException e) {
+						// not one of ours
+					}
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, SEGMENT_PREFIX + format(number) + SEGMENT_SUFFIX);
+	}
+
+	private File snapshotFile(int number) {
+		return new File(directory, SNAPSHOT_PREFIX + format(number) + SNAPSHOT_SUFFIX);
+	}
+
+	private static String format(int number) {
+		return String.format("%08d", number);
+	}
+
+	/**
+	 * Exposes its bytes without copying them.
+	 */
+	private static final class RecordBuffer extends ByteArrayOutputStream {
+
+		RecordBuffer() {
+			super(512);
+		}
+
+		ByteBuffer asByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+		void updateChecksum(CRC32 crc) {
+			crc.update(buf, 0, count);
+		}
+	}
+}
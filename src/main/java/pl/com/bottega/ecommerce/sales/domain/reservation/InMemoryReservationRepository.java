@@ -0,0 +1,155 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Thread safe in-memory repository.<br>
+ * Keeps a private snapshot of every reservation: {@link #load(Id)} hands out
+ * a copy of it and {@link #save(Reservation)} replaces it with a copy of the
+ * saved one, so callers never share mutable state. Saves are compare and
+ * set on the version, atomic per reservation; saves of different
+ * reservations do not contend.<br>
+ * When <code>capacity</code> reservations are stored, saving a new one
+ * evicts the longest closed one; if none is closed the save fails with
+ * {@link IllegalStateException}.
+ */
+public class InMemoryReservationRepository implements ReservationRepository {
+
+	private final ConcurrentHashMap<Id, Reservation> snapshots = new ConcurrentHashMap<Id, Reservation>();
+
+	/**
+	 * Ids of reservations saved as closed, oldest first; may contain ids
+	 * already evicted.
+	 */
+	private final Queue<Id> closed = new ConcurrentLinkedQueue<Id>();
+
+	private final int capacity;
+
+	/**
+	 * Stored reservations plus slots taken by new ones being saved.
+	 */
+	private final AtomicInteger occupied = new AtomicInteger();
+
+	private final LongAdder loads = new LongAdder();
+
+	private final LongAdder saves = new LongAdder();
+
+	private final LongAdder conflicts = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public InMemoryReservationRepository() {
+		this(Integer.MAX_VALUE);
+	}
+
+	public InMemoryReservationRepository(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity has to be positive: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return copy of the stored reservation, null if there is none
+	 */
+	@Override
+	public Reservation load(Id reservationId) {
+		loads.increment();
+		Reservation snapshot = snapshots.get(reservationId);
+		return snapshot == null ? null : snapshot.copy();
+	}
+
+	@Override
+	public void save(final Reservation reservation) {
+		final long version = reservation.getVersion();
+		boolean inserting = version == 0;
+		if (inserting) {
+			takeSlot();
+		}
+		final Reservation snapshot = reservation.copy();
+		snapshot.incrementVersion();
+		try {
+			snapshots.compute(reservation.getId(), (id, stored) -> {
+				long storedVersion = stored == null ? 0 : stored.getVersion();
+				if (storedVersion != version) {
+					throw new OptimisticLockException(id, version, storedVersion);
+				}
+				return snapshot;
+			});
+		} catch (OptimisticLockException e) {
+			conflicts.increment();
+			if (inserting) {
+				occupied.decrementAndGet();
+			}
+			throw e;
+		}
+		reservation.incrementVersion();
+		saves.increment();
+		if (snapshot.isClosed()) {
+			closed.add(snapshot.getId());
+		}
+	}
+
+	public int size() {
+		return snapshots.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	public long getSaveCount() {
+		return saves.sum();
+	}
+
+	/**
+	 * @return saves rejected because the reservation was saved concurrently
+	 */
+	public long getConflictCount() {
+		return conflicts.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	private void takeSlot() {
+		while (true) {
+			int taken = occupied.get();
+			if (taken < capacity) {
+				if (occupied.compareAndSet(taken, taken + 1)) {
+					return;
+				}
+			} else if (!evictClosed()) {
+				throw new IllegalStateException("Reservation repository is full: " + capacity);
+			}
+		}
+	}
+
+	/**
+	 * @return false if there was no closed reservation to evict
+	 */
+	private boolean evictClosed() {
+		Id id;
+		while ((id = closed.poll()) != null) {
+			Reservation snapshot = snapshots.get(id);
+			if (snapshot != null && snapshot.isClosed() && snapshots.remove(id, snapshot)) {
+				occupied.decrementAndGet();
+				evictions.increment();
+				return true;
+			}
+		}
+		return false;
+	}
+}
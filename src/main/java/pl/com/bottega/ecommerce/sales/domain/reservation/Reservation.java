@@ -1,14 +1,19 @@
 package pl.com.bottega.ecommerce.sales.domain.reservation;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import pl.com.bottega.ddd.support.domain.BaseAggregateRoot;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
 import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountRequest;
 import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
 import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
@@ -23,13 +28,22 @@ public class Reservation extends BaseAggregateRoot{
 	private ReservationStatus status;
 
 	
-	private List<ReservationItem> items;
+	/**
+	 * Keyed by product id, in order of adding.
+	 */
+	private Map<Id, ReservationItem> items;
 
 	
 	private ClientData clientData;
 
 	private Date createDate;
 
+	/**
+	 * Policy the cached offer items of {@link #items} were discounted with;
+	 * compared by equality.
+	 */
+	private transient DiscountPolicy offerPolicy;
+
 	@SuppressWarnings("unused")
 	private Reservation() {
 	}
@@ -39,7 +53,7 @@ public class Reservation extends BaseAggregateRoot{
 		this.status = status;
 		this.clientData = clientData;
 		this.createDate = createDate;
-		this.items = new ArrayList<ReservationItem>();
+		this.items = new LinkedHashMap<Id, ReservationItem>();
 	}
 
 	public void add(Product product, int quantity) {
@@ -48,8 +62,9 @@ public class Reservation extends BaseAggregateRoot{
 		if (!product.isAvailable())
 			domainError("Product is no longer available");
 
-		if (contains(product)) {
-			increase(product, quantity);
+		ReservationItem item = items.get(product.getId());
+		if (item != null) {
+			item.changeQuantityBy(quantity);
 		} else {
 			addNew(product, quantity);
 		}
@@ -58,55 +73,97 @@ public class Reservation extends BaseAggregateRoot{
 	/**
 	 * Sample function closured by policy </br> Higher order function closured
 	 * by policy function</br> </br> Function loads current prices, and prepares
-	 * offer according to the current availability and given discount
+	 * offer according to the current availability and given discount</br>
+	 * </br> All available items are priced in one
+	 * {@link DiscountPolicy#applyDiscounts(List)} call, so policies may apply
+	 * rules across items. The call is skipped when no item has changed
+	 * quantity, availability or price since the last call with an equal
+	 * policy; offer items whose discount has not changed are reused.</br>
+	 * Policies are compared with <code>equals</code>: keep one policy instance
+	 * for as long as its discounts hold, or make policies created per request
+	 * equal when they discount the same way, otherwise every call prices the
+	 * reservation again.
 	 * 
 	 * @param discountPolicy
 	 * @return
 	 */
 	public Offer calculateOffer(DiscountPolicy discountPolicy) {
+		if (!discountPolicy.equals(offerPolicy) || hasChangedItems()) {
+			List<ReservationItem> discountedItems = new ArrayList<ReservationItem>();
+			List<DiscountRequest> discountRequests = new ArrayList<DiscountRequest>();
+
+			for (ReservationItem item : items.values()) {
+				if (item.getProduct().isAvailable()) {
+					discountedItems.add(item);
+					discountRequests.add(new DiscountRequest(item.getProduct(),
+							item.getQuantity(), item.getProduct().getPrice()));
+				} else if (item.getOfferItem(false) == null) {
+					OfferItem offerItem = new OfferItem(item.getProduct()
+							.generateSnapshot(), item.getQuantity());
+
+					item.setOfferItem(offerItem, false);
+				}
+			}
+
+			if (!discountRequests.isEmpty())
+				applyDiscounts(discountPolicy, discountedItems, discountRequests);
+			offerPolicy = discountPolicy;
+		}
+
 		List<OfferItem> availabeItems = new ArrayList<OfferItem>();
 		List<OfferItem> unavailableItems = new ArrayList<OfferItem>();
 
-		for (ReservationItem item : items) {
+		for (ReservationItem item : items.values()) {
 			if (item.getProduct().isAvailable()) {
-				Discount discount = discountPolicy.applyDiscount(item
-						.getProduct(), item.getQuantity(), item.getProduct()
-						.getPrice());
-				OfferItem offerItem = new OfferItem(item.getProduct()
-						.generateSnapshot(), item.getQuantity(), discount);
-
-				availabeItems.add(offerItem);
+				availabeItems.add(item.getOfferItem(true));
 			} else {
-				OfferItem offerItem = new OfferItem(item.getProduct()
-						.generateSnapshot(), item.getQuantity());
-
-				unavailableItems.add(offerItem);
+				unavailableItems.add(item.getOfferItem(false));
 			}
 		}
 
 		return new Offer(availabeItems, unavailableItems);
 	}
 
-	private void addNew(Product product, int quantity) {
-		ReservationItem item = new ReservationItem(product, quantity);
-		items.add(item);
+	private boolean hasChangedItems() {
+		for (ReservationItem item : items.values()) {
+			if (item.getOfferItem(item.getProduct().isAvailable()) == null)
+				return true;
+		}
+		return false;
 	}
 
-	private void increase(Product product, int quantity) {
-		for (ReservationItem item : items) {
-			if (item.getProduct().equals(product)) {
-				item.changeQuantityBy(quantity);
-				break;
-			}
+	private void applyDiscounts(DiscountPolicy discountPolicy, List<ReservationItem> discountedItems,
+			List<DiscountRequest> discountRequests) {
+		List<Discount> discounts = discountPolicy.applyDiscounts(discountRequests);
+		if (discounts.size() != discountRequests.size())
+			throw new IllegalStateException("Discount policy returned "
+					+ discounts.size() + " discounts for "
+					+ discountRequests.size() + " items");
+
+		for (int i = 0; i < discountRequests.size(); i++) {
+			ReservationItem item = discountedItems.get(i);
+			OfferItem offered = item.getOfferItem(true);
+			if (offered != null && Objects.equals(offered.getDiscount(), discounts.get(i)))
+				continue;
+
+			DiscountRequest request = discountRequests.get(i);
+			OfferItem offerItem = new OfferItem(request.getProduct()
+					.generateSnapshot(), request.getQuantity(), discounts.get(i));
+
+			item.setOfferItem(offerItem, true);
 		}
 	}
 
+	private void addNew(Product product, int quantity) {
+		ReservationItem item = new ReservationItem(product, quantity);
+		items.put(product.getId(), item);
+	}
+
+	/**
+	 * Products are the same when their ids are, even if loaded separately.
+	 */
 	public boolean contains(Product product) {
-		for (ReservationItem item : items) {
-			if (item.getProduct().equals(product))
-				return true;
-		}
-		return false;
+		return items.containsKey(product.getId());
 	}
 
 	public boolean isClosed() {
@@ -123,7 +180,7 @@ public class Reservation extends BaseAggregateRoot{
 		ArrayList<ReservedProduct> result = new ArrayList<ReservedProduct>(
 				items.size());
 
-		for (ReservationItem item : items) {
+		for (ReservationItem item : items.values()) {
 			result.add(new ReservedProduct(item.getProduct().getId(),
 					item.getProduct().getName(), item.getQuantity(),
 					calculateItemCost(item)));
@@ -136,6 +193,41 @@ public class Reservation extends BaseAggregateRoot{
 		return item.getProduct().getPrice().multiplyBy(item.getQuantity());
 	}
 
+	Collection<ReservationItem> getItems() {
+		return items.values();
+	}
+
+	ReservationItem getItem(Id productId) {
+		return items.get(productId);
+	}
+
+	void setRestoredVersion(long version) {
+		restoreVersion(version);
+	}
+
+	/**
+	 * Puts back an item when the reservation is rebuilt from storage.
+	 */
+	void restoreItem(Product product, int quantity) {
+		items.put(product.getId(), new ReservationItem(product, quantity));
+	}
+
+	/**
+	 * @return independent copy with the same state and version, sharing
+	 *         products and offer items calculated so far
+	 */
+	Reservation copy() {
+		Reservation copy = new Reservation(id, status, clientData, createDate);
+		for (ReservationItem item : items.values()) {
+			copy.items.put(item.getProduct().getId(), item.copy());
+		}
+		copy.offerPolicy = offerPolicy;
+		copy.restoreVersion(getVersion());
+		if (isRemoved())
+			copy.markAsRemoved();
+		return copy;
+	}
+
 	public ClientData getClientData() {
 		return clientData;
 	}
@@ -0,0 +1,349 @@
+package pl.com.bottega.ecommerce.sales.domain.reservation;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+
+/**
+ * Closes reservations left open longer than a time to live.<br>
+ * Pending reservations sit in a hierarchical timing wheel: {@value #LEVELS}
+ * levels of {@value #SLOTS} slots, a slot of level <i>n</i> spanning
+ * <code>64^n</code> ticks. A reservation goes to the lowest level whose
+ * range covers its deadline and moves down a level when the slot it is in
+ * comes due, so scheduling, cancelling and advancing a tick take constant
+ * time whatever the number of pending reservations.<br>
+ * {@link #expire()} is meant to be called periodically (e.g. from a
+ * scheduled executor, about once a tick); it closes all reservations due
+ * by now through {@link Reservation#close()} and saves them. A reservation
+ * that fails to close is retried with a delay doubling from one tick, and
+ * given up after {@value #MAX_CLOSE_ATTEMPTS} attempts.
+ */
+public class ReservationExpiryScheduler {
+
+	private static final int SLOT_BITS = 6;
+
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+	private static final int LEVELS = 4;
+
+	private static final long MAX_DELAY_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+	private static final int MAX_SAVE_ATTEMPTS = 3;
+
+	private static final int MAX_CLOSE_ATTEMPTS = 8;
+
+	private static final Logger LOGGER = Logger.getLogger(ReservationExpiryScheduler.class.getName());
+
+	private final ReservationRepository reservationRepository;
+
+	private final long timeToLiveMillis;
+
+	private final long tickMillis;
+
+	private final Clock clock;
+
+	private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+
+	private final Map<Id, Entry> entries = new HashMap<Id, Entry>();
+
+	/**
+	 * Failed attempts to close reservations being retried; guarded by this.
+	 */
+	private final Map<Id, Integer> failedAttempts = new HashMap<Id, Integer>();
+
+	/**
+	 * Due reservations waiting for the next {@link #expire()}.
+	 */
+	private final Entry due = Entry.sentinel();
+
+	private final LongAdder failures = new LongAdder();
+
+	private final LongAdder abandoned = new LongAdder();
+
+	/**
+	 * Last tick processed; guarded by this.
+	 */
+	private long currentTick;
+
+	/**
+	 * Uses one second ticks and the system clock.
+	 */
+	public ReservationExpiryScheduler(ReservationRepository reservationRepository, long timeToLive, TimeUnit unit) {
+		this(reservationRepository, timeToLive, unit, 1, TimeUnit.SECONDS, Clock.systemUTC());
+	}
+
+	public ReservationExpiryScheduler(ReservationRepository reservationRepository, long timeToLive, TimeUnit unit,
+			long tick, TimeUnit tickUnit, Clock clock) {
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("Time to live can not be negative: " + timeToLive);
+		}
+		if (tick <= 0) {
+			throw new IllegalArgumentException("Tick has to be positive: " + tick);
+		}
+		this.reservationRepository = reservationRepository;
+		this.timeToLiveMillis = unit.toMillis(timeToLive);
+		this.tickMillis = Math.max(1, tickUnit.toMillis(tick));
+		this.clock = clock;
+		this.currentTick = clock.millis() / tickMillis;
+		for (Entry[] level : wheel) {
+			for (int i = 0; i < SLOTS; i++) {
+				level[i] = Entry.sentinel();
+			}
+		}
+	}
+
+	/**
+	 * Schedules closing the reservation when its time to live, counted from
+	 * its create date, passes. Rescheduling replaces the previous deadline.
+	 */
+	public void schedule(Reservation reservation) {
+		if (reservation.isClosed()) {
+			return;
+		}
+		schedule(reservation.getId(), reservation.getCreateDate().getTime() + timeToLiveMillis);
+	}
+
+	/**
+	 * @param deadline
+	 *            epoch millis after which the reservation is closed
+	 */
+	public synchronized void schedule(Id reservationId, long deadline) {
+		failedAttempts.remove(reservationId);
+		scheduleAt(reservationId, deadline);
+	}
+
+	private void scheduleAt(Id reservationId, long deadline) {
+		Entry entry = entries.get(reservationId);
+		if (entry == null) {
+			entry = new Entry(reservationId);
+			entries.put(reservationId, entry);
+		} else {
+			entry.unlink();
+		}
+		// rounded up, so a reservation is never closed before its deadline
+		entry.expiryTick = (deadline + tickMillis - 1) / tickMillis;
+		place(entry);
+	}
+
+	/**
+	 * @return false if the reservation was not pending
+	 */
+	public synchronized boolean cancel(Id reservationId) {
+		failedAttempts.remove(reservationId);
+		Entry entry = entries.remove(reservationId);
+		if (entry == null) {
+			return false;
+		}
+		entry.unlink();
+		return true;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Closes and saves all pending reservations due by now. Reservations
+	 * already closed or removed are skipped; a save conflicting with a
+	 * concurrent one is retried on the freshly loaded reservation. A
+	 * reservation that can not be closed, e.g. because the repository
+	 * fails, is scheduled again with a growing delay and logged and dropped
+	 * once it has failed {@value #MAX_CLOSE_ATTEMPTS} times; the rest of the
+	 * batch is closed anyway.
+	 *
+	 * @return number of reservations closed
+	 */
+	public int expire() {
+		long now = clock.millis();
+		int closed = 0;
+		for (Id reservationId : advance(now)) {
+			try {
+				if (close(reservationId)) {
+					closed++;
+				}
+				succeeded(reservationId);
+			} catch (RuntimeException e) {
+				failures.increment();
+				retry(reservationId, now, e);
+			}
+		}
+		return closed;
+	}
+
+	/**
+	 * @return attempts to close a due reservation that failed
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * @return reservations given up after failing to close
+	 *         {@value #MAX_CLOSE_ATTEMPTS} times
+	 */
+	public long getAbandonedCount() {
+		return abandoned.sum();
+	}
+
+	private synchronized void succeeded(Id reservationId) {
+		if (!failedAttempts.isEmpty()) {
+			failedAttempts.remove(reservationId);
+		}
+	}
+
+	private synchronized void retry(Id reservationId, long now, RuntimeException failure) {
+		if (entries.containsKey(reservationId)) {
+			// scheduled again meanwhile
+			return;
+		}
+		int attempts = failedAttempts.merge(reservationId, 1, Integer::sum);
+		if (attempts == MAX_CLOSE_ATTEMPTS) {
+			failedAttempts.remove(reservationId);
+			abandoned.increment();
+			LOGGER.log(Level.WARNING, "Reservation " + reservationId + " not closed after " + attempts + " attempts",
+					failure);
+			return;
+		}
+		scheduleAt(reservationId, now + (tickMillis << (attempts - 1)));
+	}
+
+	/**
+	 * Moves the wheel to the tick of <code>now</code>.
+	 *
+	 * @return reservations due, removed from the scheduler
+	 */
+	synchronized List<Id> advance(long now) {
+		long targetTick = now / tickMillis;
+		while (currentTick < targetTick) {
+			currentTick++;
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+					cascade(wheel[level][slot(currentTick, level)]);
+				}
+			}
+			due.appendAll(wheel[0][slot(currentTick, 0)]);
+		}
+		List<Id> expired = new ArrayList<Id>();
+		for (Entry entry = due.next; entry != due; entry = entry.next) {
+			expired.add(entry.reservationId);
+			entries.remove(entry.reservationId);
+		}
+		due.clear();
+		return expired;
+	}
+
+	private boolean close(Id reservationId) {
+		for (int attempt = 1;; attempt++) {
+			Reservation reservation = reservationRepository.load(reservationId);
+			if (reservation == null || reservation.isClosed()) {
+				return false;
+			}
+			reservation.close();
+			try {
+				reservationRepository.save(reservation);
+				return true;
+			} catch (OptimisticLockException e) {
+				if (attempt == MAX_SAVE_ATTEMPTS) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void place(Entry entry) {
+		long delay = entry.expiryTick - currentTick;
+		if (delay <= 0) {
+			due.append(entry);
+			return;
+		}
+		long slotTick = delay > MAX_DELAY_TICKS ? currentTick + MAX_DELAY_TICKS : entry.expiryTick;
+		int level = 0;
+		while (level < LEVELS - 1 && (slotTick - currentTick) >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		wheel[level][slot(slotTick, level)].append(entry);
+	}
+
+	private void cascade(Entry bucket) {
+		Entry entry = bucket.next;
+		bucket.clear();
+		while (entry != bucket) {
+			Entry next = entry.next;
+			entry.prev = entry;
+			entry.next = entry;
+			place(entry);
+			entry = next;
+		}
+	}
+
+	private static int slot(long tick, int level) {
+		return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+	}
+
+	/**
+	 * Node of a circular doubly linked bucket list; every bucket has a
+	 * sentinel node.
+	 */
+	private static final class Entry {
+
+		private final Id reservationId;
+
+		private long expiryTick;
+
+		private Entry prev = this;
+
+		private Entry next = this;
+
+		private Entry(Id reservationId) {
+			this.reservationId = reservationId;
+		}
+
+		static Entry sentinel() {
+			return new Entry(null);
+		}
+
+		void append(Entry entry) {
+			entry.prev = prev;
+			entry.next = this;
+			prev.next = entry;
+			prev = entry;
+		}
+
+		/**
+		 * Moves all entries of another bucket to the end of this one.
+		 */
+		void appendAll(Entry bucket) {
+			if (bucket.next == bucket) {
+				return;
+			}
+			Entry first = bucket.next;
+			Entry last = bucket.prev;
+			first.prev = prev;
+			prev.next = first;
+			last.next = this;
+			prev = last;
+			bucket.clear();
+		}
+
+		void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = this;
+			next = this;
+		}
+
+		void clear() {
+			prev = this;
+			next = this;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package pl.com.bottega.ecommerce.sales.domain.reservation;
 
 import pl.com.bottega.ddd.support.domain.BaseEntity;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
 import pl.com.bottega.ecommerce.sharedkernel.exceptions.DomainOperationException.DomainOperationException;
 
@@ -9,6 +10,14 @@ public class ReservationItem extends BaseEntity{
 	
 	private int quantity;
 
+	/**
+	 * Offer item last calculated for this item; null when the quantity has
+	 * changed since.
+	 */
+	private transient OfferItem offerItem;
+
+	private transient boolean offeredAvailable;
+
 	@SuppressWarnings("unused")
 	private ReservationItem(){}
 	
@@ -22,6 +31,34 @@ public class ReservationItem extends BaseEntity{
 		if (changed <= 0)
 			throw new DomainOperationException(null, "change below 1");
 		this.quantity = changed;
+		this.offerItem = null;
+	}
+
+	/**
+	 * @return offer item calculated before, if product availability and price
+	 *         are still the same; null otherwise
+	 */
+	OfferItem getOfferItem(boolean available) {
+		if (offerItem == null || offeredAvailable != available)
+			return null;
+		if (!offerItem.getProductData().getPrice().equals(product.getPrice()))
+			return null;
+		return offerItem;
+	}
+
+	void setOfferItem(OfferItem offerItem, boolean available) {
+		this.offerItem = offerItem;
+		this.offeredAvailable = available;
+	}
+
+	/**
+	 * @return copy sharing the product and the immutable offer item
+	 */
+	ReservationItem copy() {
+		ReservationItem copy = new ReservationItem(product, quantity);
+		copy.offerItem = offerItem;
+		copy.offeredAvailable = offeredAvailable;
+		return copy;
 	}
 	
 	public Product getProduct() {
@@ -1,8 +1,18 @@
 package pl.com.bottega.ecommerce.sales.domain.reservation;
 
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 
 public interface ReservationRepository {
+	/**
+	 * Compare and set: stores the reservation only if the stored one still has
+	 * the version of the saved one (none stored for version 0), then
+	 * increments the version of the saved one.
+	 * 
+	 * @throws OptimisticLockException
+	 *             if the reservation was saved by someone else since it was
+	 *             loaded
+	 */
 	void save(Reservation reservation);
 
 	Reservation load(Id reservationId);
@@ -0,0 +1,92 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interned currencies used by {@link Money}.<br>
+ * Every currency code is registered once and gets a small ordinal, so money
+ * objects can keep an <code>int</code> instead of a code and compare
+ * currencies without String equality. The cached {@link Currency} and its
+ * minor unit scale are then plain array lookups by ordinal.
+ */
+public final class CurrencyRegistry {
+
+	/**
+	 * Scale used for currencies without minor units defined (e.g. gold).
+	 */
+	static final int DEFAULT_SCALE = 2;
+
+	private static final ConcurrentMap<String, Integer> ORDINALS = new ConcurrentHashMap<String, Integer>();
+
+	private static volatile Entry[] entries = new Entry[0];
+
+	private CurrencyRegistry() {
+	}
+
+	public static int ordinalOf(Currency currency) {
+		return ordinalOf(currency.getCurrencyCode());
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the code is not a supported ISO 4217 code
+	 */
+	public static int ordinalOf(String currencyCode) {
+		Integer ordinal = ORDINALS.get(currencyCode);
+		if (ordinal != null) {
+			return ordinal;
+		}
+		return register(Currency.getInstance(currencyCode));
+	}
+
+	public static Currency currencyOf(int ordinal) {
+		return entries[ordinal].currency;
+	}
+
+	public static String codeOf(int ordinal) {
+		return entries[ordinal].code;
+	}
+
+	/**
+	 * @return number of decimal places of the minor unit, e.g. 2 for EUR, 0
+	 *         for JPY, 3 for KWD
+	 */
+	public static int scaleOf(int ordinal) {
+		return entries[ordinal].scale;
+	}
+
+	private static synchronized int register(Currency currency) {
+		String code = currency.getCurrencyCode();
+		Integer existing = ORDINALS.get(code);
+		if (existing != null) {
+			return existing;
+		}
+
+		int ordinal = entries.length;
+		int fractionDigits = currency.getDefaultFractionDigits();
+		int scale = fractionDigits < 0 ? DEFAULT_SCALE : fractionDigits;
+
+		Entry[] grown = Arrays.copyOf(entries, ordinal + 1);
+		grown[ordinal] = new Entry(code, currency, scale);
+		entries = grown;
+		ORDINALS.put(code, ordinal);
+		return ordinal;
+	}
+
+	private static final class Entry {
+		private final String code;
+
+		private final Currency currency;
+
+		private final int scale;
+
+		private Entry(String code, Currency currency, int scale) {
+			this.code = code;
+			this.currency = currency;
+			this.scale = scale;
+		}
+	}
+}
@@ -15,31 +15,60 @@
  */
 package pl.com.bottega.ecommerce.sharedkernel;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Currency;
 
-import org.fest.util.Objects;
-
+/**
+ * Amount of money stored as a number of minor units (e.g. cents) in a
+ * <code>long</code>. Scale of the minor unit comes from the currency, see
+ * {@link CurrencyRegistry}.<br>
+ * Amounts that do not fit into a <code>long</code> fall back to an exact
+ * {@link BigDecimal}, so arithmetic never loses precision.
+ */
 public class Money {
 	public static final Currency DEFAULT_CURRENCY = Currency.getInstance("EUR");
 
 	public static final Money ZERO = new Money(BigDecimal.ZERO);
 
-	private BigDecimal denomination;
+	/**
+	 * Amount in minor units, meaningful only when {@link #overflow} is null.
+	 */
+	private long units;
+
+	/**
+	 * Exact amount, set only when it does not fit into {@link #units}.
+	 */
+	private BigDecimal overflow;
 
-	private String currencyCode;
+	/**
+	 * Ordinal in {@link CurrencyRegistry}.
+	 */
+	private int currency;
 
 	protected Money() {
 	}
 
 	public Money(BigDecimal denomination, Currency currency) {
-		this(denomination, currency.getCurrencyCode());
+		this(denomination, CurrencyRegistry.ordinalOf(currency));
+	}
+
+	private Money(BigDecimal denomination, int currency) {
+		BigDecimal scaled = denomination.setScale(CurrencyRegistry.scaleOf(currency), RoundingMode.HALF_EVEN);
+		if (fitsInLong(scaled)) {
+			this.units = scaled.unscaledValue().longValue();
+		} else {
+			this.overflow = scaled;
+		}
+		this.currency = currency;
 	}
 
-	private Money(BigDecimal denomination, String currencyCode) {
-		this.denomination = denomination.setScale(2, RoundingMode.HALF_EVEN);
-		this.currencyCode = currencyCode;
+	private Money(int currency, long units) {
+		this.currency = currency;
+		this.units = units;
 	}
 
 	public Money(BigDecimal denomination) {
@@ -47,23 +76,61 @@ public class Money {
 	}
 
 	public Money(double denomination, Currency currency) {
-		this(new BigDecimal(denomination), currency.getCurrencyCode());
+		this(new BigDecimal(denomination), CurrencyRegistry.ordinalOf(currency));
 	}
 
 	public Money(double denomination, String currencyCode) {
-		this(new BigDecimal(denomination), currencyCode);
+		this(new BigDecimal(denomination), CurrencyRegistry.ordinalOf(currencyCode));
 	}
 
 	public Money(double denomination) {
 		this(denomination, DEFAULT_CURRENCY);
 	}
 
+	/**
+	 * @param minorUnits amount in the smallest unit of the currency (cents)
+	 * @param currency ordinal in {@link CurrencyRegistry}
+	 */
+	static Money ofMinorUnits(long minorUnits, int currency) {
+		return new Money(currency, minorUnits);
+	}
+
+	static Money of(BigDecimal denomination, int currency) {
+		return new Money(denomination, currency);
+	}
+
 	public Money multiplyBy(double multiplier) {
+		long integral = (long) multiplier;
+		if (integral == multiplier && Math.abs(integral) < (1L << 53)) {
+			return multiplyBy(integral);
+		}
 		return multiplyBy(new BigDecimal(multiplier));
 	}
 
+	public Money multiplyBy(long multiplier) {
+		if (overflow == null) {
+			try {
+				return ofMinorUnits(Math.multiplyExact(units, multiplier), currency);
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		return multiplyBy(BigDecimal.valueOf(multiplier));
+	}
+
+	public Money multiplyBy(Rate rate) {
+		if (overflow == null) {
+			try {
+				return ofMinorUnits(rate.applyTo(units), currency);
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		return multiplyBy(rate.toBigDecimal());
+	}
+
 	public Money multiplyBy(BigDecimal multiplier) {
-		return new Money(denomination.multiply(multiplier), currencyCode);
+		return new Money(getDenomination().multiply(multiplier), currency);
 	}
 
 	public Money add(Money money) {
@@ -71,67 +138,170 @@ public class Money {
 			throw new IllegalArgumentException("Currency mismatch");
 		}
 
-		return new Money(denomination.add(money.denomination), determineCurrencyCode(money));
+		int resultCurrency = determineCurrency(money);
+		if (overflow == null && money.overflow == null) {
+			try {
+				return ofMinorUnits(Math.addExact(units, money.units), resultCurrency);
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		return new Money(getDenomination().add(money.getDenomination()), resultCurrency);
 	}
 
 	public Money subtract(Money money) {
 		if (!compatibleCurrency(money))
 			throw new IllegalArgumentException("Currency mismatch");
 
-		return new Money(denomination.subtract(money.denomination), determineCurrencyCode(money));
+		int resultCurrency = determineCurrency(money);
+		if (overflow == null && money.overflow == null) {
+			try {
+				return ofMinorUnits(Math.subtractExact(units, money.units), resultCurrency);
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		return new Money(getDenomination().subtract(money.getDenomination()), resultCurrency);
 	}
 
 	/**
 	 * Currency is compatible if the same or either money object has zero value.
 	 */
 	private boolean compatibleCurrency(Money money) {
-		return isZero(denomination) || isZero(money.denomination) || currencyCode.equals(money.getCurrencyCode());
+		return currency == money.currency || isZero() || money.isZero();
 	}
 
-	private boolean isZero(BigDecimal testedValue) {
-		return BigDecimal.ZERO.compareTo(testedValue) == 0;
+	boolean isZero() {
+		return overflow == null && units == 0;
+	}
+
+	private static boolean fitsInLong(BigDecimal scaled) {
+		return scaled.unscaledValue().bitLength() < Long.SIZE;
 	}
 
 	/**
 	 * @return currency from this object or otherCurrencyCode. Preferred is the
 	 *         one that comes from Money that has non-zero value.
 	 */
-	private Currency determineCurrencyCode(Money otherMoney) {
-		String resultingCurrenctCode = isZero(denomination) ? otherMoney.currencyCode : currencyCode;
-		return Currency.getInstance(resultingCurrenctCode);
+	private int determineCurrency(Money otherMoney) {
+		return isZero() ? otherMoney.currency : currency;
+	}
+
+	/**
+	 * @return amount in minor units, valid only when {@link #isOverflowed()}
+	 *         is false
+	 */
+	long getMinorUnits() {
+		return units;
+	}
+
+	boolean isOverflowed() {
+		return overflow != null;
+	}
+
+	BigDecimal getDenomination() {
+		return overflow != null ? overflow : BigDecimal.valueOf(units, CurrencyRegistry.scaleOf(currency));
+	}
+
+	/**
+	 * @return ordinal in {@link CurrencyRegistry}
+	 */
+	int getCurrencyOrdinal() {
+		return currency;
 	}
 
 	public String getCurrencyCode() {
-		return currencyCode;
+		return CurrencyRegistry.codeOf(currency);
 	}
 
 	public Currency getCurrency() {
-		return Currency.getInstance(currencyCode);
+		return CurrencyRegistry.currencyOf(currency);
 	}
 
 	public boolean greaterThan(Money other) {
-		return denomination.compareTo(other.denomination) > 0;
+		return compareTo(other) > 0;
 	}
 
 	public boolean lessThan(Money other) {
-		return denomination.compareTo(other.denomination) < 0;
+		return compareTo(other) < 0;
 	}
 
 	public boolean lessOrEquals(Money other) {
-		return denomination.compareTo(other.denomination) <= 0;
+		return compareTo(other) <= 0;
+	}
+
+	private int compareTo(Money other) {
+		if (overflow == null && other.overflow == null && sameScale(other)) {
+			return Long.compare(units, other.units);
+		}
+		return getDenomination().compareTo(other.getDenomination());
+	}
+
+	/**
+	 * Compares without rounding and, for amounts and rates that fit into a
+	 * long, without allocating.
+	 *
+	 * @return true if the difference between the amounts is less than
+	 *         <code>tolerance</code> of the greater one
+	 */
+	public boolean differsLessThan(Money other, Rate tolerance) {
+		if (!compatibleCurrency(other))
+			throw new IllegalArgumentException("Currency mismatch");
+
+		if (overflow == null && other.overflow == null && sameScale(other) && tolerance.getDivisor() != 0) {
+			long max = Math.max(units, other.units);
+			long min = Math.min(units, other.units);
+			try {
+				// difference < max * numerator / divisor
+				return Math.multiplyExact(Math.subtractExact(max, min), tolerance.getDivisor()) < Math
+						.multiplyExact(max, tolerance.getNumerator());
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		BigDecimal max = getDenomination().max(other.getDenomination());
+		BigDecimal min = getDenomination().min(other.getDenomination());
+		return max.multiply(tolerance.toBigDecimal()).compareTo(max.subtract(min)) > 0;
+	}
+
+	private boolean sameScale(Money other) {
+		return currency == other.currency
+				|| CurrencyRegistry.scaleOf(currency) == CurrencyRegistry.scaleOf(other.currency);
+	}
+
+	/**
+	 * Writes compact binary form: currency code, then minor units or exact
+	 * text of an overflowed amount.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeUTF(getCurrencyCode());
+		out.writeBoolean(overflow != null);
+		if (overflow != null) {
+			out.writeUTF(overflow.toPlainString());
+		} else {
+			out.writeLong(units);
+		}
+	}
+
+	public static Money readFrom(DataInput in) throws IOException {
+		int currency = CurrencyRegistry.ordinalOf(in.readUTF());
+		if (in.readBoolean()) {
+			return of(new BigDecimal(in.readUTF()), currency);
+		}
+		return ofMinorUnits(in.readLong(), currency);
 	}
 
 	@Override
 	public String toString() {
-		return String.format("%0$.2f %s", denomination, getCurrency().getSymbol());
+		return MoneyFormatter.display().format(this);
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((currencyCode == null) ? 0 : currencyCode.hashCode());
-		result = prime * result + ((denomination == null) ? 0 : denomination.hashCode());
+		result = prime * result + currency;
+		result = prime * result + ((overflow == null) ? (int) (units ^ (units >>> 32)) : overflow.hashCode());
 		return result;
 	}
 
@@ -144,7 +314,7 @@ public class Money {
 		if (getClass() != obj.getClass())
 			return false;
 		Money other = (Money) obj;
-		return compatibleCurrency(other) && Objects.areEqual(denomination, other.denomination);
+		return compatibleCurrency(other) && compareTo(other) == 0;
 	}
 
 }
@@ -0,0 +1,126 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable running total of {@link Money} values.<br>
+ * Sums in place instead of creating a new Money per addition and produces an
+ * immutable Money only on {@link #toMoney()}. Currency rules are the same as
+ * in {@link Money#add(Money)}: a zero total adopts the currency of the next
+ * value, otherwise currencies have to match.<br>
+ * Not thread safe.
+ */
+public class MoneyAccumulator {
+
+	private static final int DEFAULT_CURRENCY = CurrencyRegistry.ordinalOf(Money.DEFAULT_CURRENCY);
+
+	private long units;
+
+	private BigDecimal overflow;
+
+	/**
+	 * Ordinal in {@link CurrencyRegistry}.
+	 */
+	private int currency;
+
+	private Money total;
+
+	public MoneyAccumulator() {
+		reset();
+	}
+
+	public MoneyAccumulator add(Money money) {
+		adoptCurrency(money);
+		if (money.isOverflowed()) {
+			addExact(money.getDenomination());
+		} else {
+			addUnits(money.getMinorUnits());
+		}
+		return this;
+	}
+
+	/**
+	 * Adds <code>price * quantity</code> without creating an intermediate Money.
+	 */
+	public MoneyAccumulator add(Money price, long quantity) {
+		adoptCurrency(price);
+		if (!price.isOverflowed()) {
+			try {
+				addUnits(Math.multiplyExact(price.getMinorUnits(), quantity));
+				return this;
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		addExact(price.getDenomination().multiply(BigDecimal.valueOf(quantity)));
+		return this;
+	}
+
+	public MoneyAccumulator subtract(Money money) {
+		adoptCurrency(money);
+		if (money.isOverflowed() || money.getMinorUnits() == Long.MIN_VALUE) {
+			addExact(money.getDenomination().negate());
+		} else {
+			addUnits(-money.getMinorUnits());
+		}
+		return this;
+	}
+
+	public boolean isZero() {
+		return overflow == null && units == 0;
+	}
+
+	/**
+	 * @return accumulated total; the same instance is returned until the next
+	 *         modification
+	 */
+	public Money toMoney() {
+		if (total == null) {
+			total = overflow == null ? Money.ofMinorUnits(units, currency) : Money.of(overflow, currency);
+		}
+		return total;
+	}
+
+	public void reset() {
+		units = 0;
+		overflow = null;
+		currency = DEFAULT_CURRENCY;
+		total = null;
+	}
+
+	private void adoptCurrency(Money money) {
+		total = null;
+		int other = money.getCurrencyOrdinal();
+		if (other == currency) {
+			return;
+		}
+		if (isZero()) {
+			currency = other;
+		} else if (!money.isZero()) {
+			throw new IllegalArgumentException("Currency mismatch");
+		}
+	}
+
+	private void addUnits(long value) {
+		if (overflow == null) {
+			try {
+				units = Math.addExact(units, value);
+				return;
+			} catch (ArithmeticException e) {
+				// falls back to exact arithmetic below
+			}
+		}
+		addExact(BigDecimal.valueOf(value, CurrencyRegistry.scaleOf(currency)));
+	}
+
+	private void addExact(BigDecimal value) {
+		BigDecimal current = overflow == null ? BigDecimal.valueOf(units, CurrencyRegistry.scaleOf(currency)) : overflow;
+		Money normalized = Money.of(current.add(value), currency);
+		if (normalized.isOverflowed()) {
+			overflow = normalized.getDenomination();
+		} else {
+			overflow = null;
+			units = normalized.getMinorUnits();
+		}
+	}
+}
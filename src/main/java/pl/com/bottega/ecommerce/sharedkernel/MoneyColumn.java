@@ -0,0 +1,109 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable column of money amounts stored as primitive minor units.<br>
+ * Meant for stores keeping many amounts of (usually) one currency: an
+ * element costs 8 bytes instead of a {@link Money} object. A currency
+ * column is allocated only once an element's currency differs from the
+ * first one; amounts that do not fit into a <code>long</code> are kept as
+ * objects aside. Elements are returned as created, including the currency
+ * of zero amounts. Not thread safe.
+ */
+public class MoneyColumn {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] units = new long[INITIAL_CAPACITY];
+
+	/**
+	 * Ordinal in {@link CurrencyRegistry} of the first element.
+	 */
+	private int currency = -1;
+
+	/**
+	 * Per element ordinals; null while all elements share {@link #currency}.
+	 */
+	private int[] currencies;
+
+	private Map<Integer, Money> overflowed;
+
+	private int size;
+
+	public void add(Money value) {
+		if (size == units.length) {
+			units = Arrays.copyOf(units, size * 2);
+			if (currencies != null) {
+				currencies = Arrays.copyOf(currencies, size * 2);
+			}
+		}
+		int ordinal = value.getCurrencyOrdinal();
+		if (currency == -1) {
+			currency = ordinal;
+		} else if (ordinal != currency && currencies == null) {
+			currencies = new int[units.length];
+			Arrays.fill(currencies, 0, size, currency);
+		}
+		if (currencies != null) {
+			currencies[size] = ordinal;
+		}
+		if (value.isOverflowed()) {
+			if (overflowed == null) {
+				overflowed = new HashMap<Integer, Money>();
+			}
+			overflowed.put(size, value);
+		} else {
+			units[size] = value.getMinorUnits();
+		}
+		size++;
+	}
+
+	public Money get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (overflowed != null) {
+			Money value = overflowed.get(index);
+			if (value != null) {
+				return value;
+			}
+		}
+		return Money.ofMinorUnits(units[index], currencies == null ? currency : currencies[index]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the column for bulk arithmetic.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if non-zero elements have different currencies
+	 * @throws ArithmeticException
+	 *             if an element does not fit into a <code>long</code>
+	 */
+	public MoneyVector toVector() {
+		if (overflowed != null && !overflowed.isEmpty()) {
+			throw new ArithmeticException("Amount does not fit into money vector: " + overflowed.values().iterator().next());
+		}
+		int vectorCurrency = currency == -1 ? CurrencyRegistry.ordinalOf(Money.DEFAULT_CURRENCY) : currency;
+		if (currencies != null) {
+			boolean currencyFixed = false;
+			for (int i = 0; i < size; i++) {
+				if (units[i] == 0) {
+					continue;
+				}
+				if (currencyFixed && currencies[i] != vectorCurrency) {
+					throw new IllegalArgumentException("Currency mismatch");
+				}
+				vectorCurrency = currencies[i];
+				currencyFixed = true;
+			}
+		}
+		return new MoneyVector(Arrays.copyOf(units, size), vectorCurrency);
+	}
+}
@@ -0,0 +1,171 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes {@link Money} as text straight into a caller supplied buffer.<br>
+ * Digits are emitted one by one from the minor units, so formatting a
+ * regular amount does not create any intermediate objects. Currency labels
+ * are cached per formatter.
+ * <ul>
+ * <li>plain format: <code>-1234.50 EUR</code>, machine readable, locale
+ * independent</li>
+ * <li>display format: <code>-1234,50 €</code>, decimal separator and currency
+ * symbol of the given locale</li>
+ * </ul>
+ * Instances are thread safe.
+ */
+public final class MoneyFormatter {
+
+	private static final MoneyFormatter PLAIN = new MoneyFormatter(null, '.');
+
+	private static final ConcurrentMap<Locale, MoneyFormatter> DISPLAY = new ConcurrentHashMap<Locale, MoneyFormatter>();
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Null for plain format.
+	 */
+	private final Locale locale;
+
+	private final char decimalSeparator;
+
+	/**
+	 * Currency labels indexed by {@link CurrencyRegistry} ordinal.
+	 */
+	private volatile String[] labels = new String[0];
+
+	private MoneyFormatter(Locale locale, char decimalSeparator) {
+		this.locale = locale;
+		this.decimalSeparator = decimalSeparator;
+	}
+
+	public static MoneyFormatter plain() {
+		return PLAIN;
+	}
+
+	/**
+	 * @return display formatter for the default format locale
+	 */
+	public static MoneyFormatter display() {
+		return display(Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	public static MoneyFormatter display(Locale locale) {
+		MoneyFormatter formatter = DISPLAY.get(locale);
+		if (formatter == null) {
+			char separator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+			MoneyFormatter created = new MoneyFormatter(locale, separator);
+			formatter = DISPLAY.putIfAbsent(locale, created);
+			if (formatter == null) {
+				formatter = created;
+			}
+		}
+		return formatter;
+	}
+
+	public String format(Money money) {
+		return format(money, new StringBuilder(24)).toString();
+	}
+
+	public StringBuilder format(Money money, StringBuilder target) {
+		try {
+			appendTo(money, target);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return target;
+	}
+
+	/**
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer has no room left
+	 */
+	public CharBuffer format(Money money, CharBuffer target) {
+		try {
+			appendTo(money, target);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return target;
+	}
+
+	public <A extends Appendable> A format(Money money, A target) throws IOException {
+		appendTo(money, target);
+		return target;
+	}
+
+	private void appendTo(Money money, Appendable target) throws IOException {
+		int currency = money.getCurrencyOrdinal();
+		int scale = CurrencyRegistry.scaleOf(currency);
+		long units = money.getMinorUnits();
+		if (money.isOverflowed() || units == Long.MIN_VALUE) {
+			target.append(money.getDenomination().toPlainString().replace('.', decimalSeparator));
+		} else {
+			appendUnits(units, scale, target);
+		}
+		target.append(' ');
+		target.append(label(currency));
+	}
+
+	private void appendUnits(long units, int scale, Appendable target) throws IOException {
+		if (units < 0) {
+			target.append('-');
+			units = -units;
+		}
+		long divisor = POWERS_OF_TEN[scale];
+		appendDigits(units / divisor, 1, target);
+		if (scale > 0) {
+			target.append(decimalSeparator);
+			appendDigits(units % divisor, scale, target);
+		}
+	}
+
+	/**
+	 * Appends a non-negative value, left padded with zeros to minDigits.
+	 */
+	private static void appendDigits(long value, int minDigits, Appendable target) throws IOException {
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && POWERS_OF_TEN[digits] <= value) {
+			digits++;
+		}
+		for (int i = Math.max(digits, minDigits) - 1; i >= 0; i--) {
+			target.append((char) ('0' + (value / POWERS_OF_TEN[i]) % 10));
+		}
+	}
+
+	private String label(int currency) {
+		String[] cached = labels;
+		if (currency < cached.length && cached[currency] != null) {
+			return cached[currency];
+		}
+		return cacheLabel(currency);
+	}
+
+	private synchronized String cacheLabel(int currency) {
+		String[] cached = labels;
+		if (currency >= cached.length) {
+			cached = Arrays.copyOf(cached, currency + 1);
+		} else {
+			cached = cached.clone();
+		}
+		String label = locale == null ? CurrencyRegistry.codeOf(currency)
+				: CurrencyRegistry.currencyOf(currency).getSymbol(locale);
+		cached[currency] = label;
+		labels = cached;
+		return label;
+	}
+}
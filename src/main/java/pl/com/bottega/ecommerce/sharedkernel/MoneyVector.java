@@ -0,0 +1,253 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Column of money amounts in a single currency, stored as a primitive array
+ * of minor units.<br>
+ * Meant for bulk jobs (reporting, re-pricing) that would otherwise call
+ * {@link Money#add(Money)} element by element. Loops work on the raw
+ * <code>long[]</code>, so the JIT can unroll and vectorize them.<br>
+ * Modifying operations work in place. Results that do not fit into a
+ * <code>long</code> element throw {@link ArithmeticException} and leave the
+ * vector unchanged; sums are exact. Not thread safe.
+ */
+public class MoneyVector {
+
+	private final long[] units;
+
+	/**
+	 * Ordinal in {@link CurrencyRegistry}.
+	 */
+	private final int currency;
+
+	MoneyVector(long[] units, int currency) {
+		this.units = units;
+		this.currency = currency;
+	}
+
+	public static MoneyVector zeros(int size, Currency currency) {
+		return new MoneyVector(new long[size], CurrencyRegistry.ordinalOf(currency));
+	}
+
+	public static MoneyVector of(Collection<Money> values) {
+		return of(values, Function.<Money> identity());
+	}
+
+	/**
+	 * Builds a vector straight from domain objects, e.g.
+	 * <code>MoneyVector.of(invoice.getItems(), InvoiceLine::getNet)</code>.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if non-zero values have different currencies
+	 */
+	public static <T> MoneyVector of(Collection<T> elements, Function<? super T, Money> amount) {
+		long[] units = new long[elements.size()];
+		int currency = -1;
+		boolean currencyFixed = false;
+		int i = 0;
+		for (T element : elements) {
+			Money money = amount.apply(element);
+			if (money.isOverflowed()) {
+				throw new ArithmeticException("Amount does not fit into money vector: " + money);
+			}
+			if (!money.isZero()) {
+				if (currencyFixed && money.getCurrencyOrdinal() != currency) {
+					throw new IllegalArgumentException("Currency mismatch");
+				}
+				currency = money.getCurrencyOrdinal();
+				currencyFixed = true;
+			} else if (currency == -1) {
+				currency = money.getCurrencyOrdinal();
+			}
+			units[i++] = money.getMinorUnits();
+		}
+		if (currency == -1) {
+			currency = CurrencyRegistry.ordinalOf(Money.DEFAULT_CURRENCY);
+		}
+		return new MoneyVector(units, currency);
+	}
+
+	public int size() {
+		return units.length;
+	}
+
+	public Money get(int index) {
+		return Money.ofMinorUnits(units[index], currency);
+	}
+
+	public void set(int index, Money value) {
+		checkCurrency(value);
+		if (value.isOverflowed()) {
+			throw new ArithmeticException("Amount does not fit into money vector: " + value);
+		}
+		units[index] = value.getMinorUnits();
+	}
+
+	public Currency getCurrency() {
+		return CurrencyRegistry.currencyOf(currency);
+	}
+
+	/**
+	 * @return exact sum of all elements
+	 */
+	public Money sum() {
+		// high and low halves are summed separately so that the loop cannot
+		// overflow for any array length and still vectorizes
+		long low = 0;
+		long high = 0;
+		for (int i = 0; i < units.length; i++) {
+			low += units[i] & 0xFFFFFFFFL;
+			high += units[i] >> 32;
+		}
+		try {
+			return Money.ofMinorUnits(Math.addExact(Math.multiplyExact(high, 1L << 32), low), currency);
+		} catch (ArithmeticException e) {
+			BigInteger exact = BigInteger.valueOf(high).shiftLeft(32).add(BigInteger.valueOf(low));
+			return Money.of(new BigDecimal(exact, CurrencyRegistry.scaleOf(currency)), currency);
+		}
+	}
+
+	public Money min() {
+		checkNotEmpty();
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < units.length; i++) {
+			min = Math.min(min, units[i]);
+		}
+		return Money.ofMinorUnits(min, currency);
+	}
+
+	public Money max() {
+		checkNotEmpty();
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < units.length; i++) {
+			max = Math.max(max, units[i]);
+		}
+		return Money.ofMinorUnits(max, currency);
+	}
+
+	/**
+	 * Multiplies every element by an integer factor, e.g. quantity.
+	 */
+	public MoneyVector scale(long factor) {
+		if (factor != 0 && maxMagnitude() > Long.MAX_VALUE / Math.abs(factor)) {
+			throw new ArithmeticException("Money vector overflow");
+		}
+		for (int i = 0; i < units.length; i++) {
+			units[i] *= factor;
+		}
+		return this;
+	}
+
+	/**
+	 * Replaces every element with the given percent of it, rounded half even
+	 * to the minor unit (same as {@link Money#multiplyBy(Rate)}).
+	 */
+	public MoneyVector applyPercent(BigDecimal percent) {
+		return apply(Rate.percent(percent));
+	}
+
+	/**
+	 * Multiplies every element by the rate, rounded half even to the minor
+	 * unit (same as {@link Money#multiplyBy(Rate)}).
+	 */
+	public MoneyVector apply(Rate rate) {
+		long multiplier = rate.getNumerator();
+		long divisor = rate.getDivisor();
+		if (divisor == 0 || (multiplier != 0 && maxMagnitude() > Long.MAX_VALUE / Math.abs(multiplier))) {
+			applyExact(rate.toBigDecimal());
+			return this;
+		}
+		for (int i = 0; i < units.length; i++) {
+			units[i] = Rate.divideHalfEven(units[i] * multiplier, divisor);
+		}
+		return this;
+	}
+
+	/**
+	 * Element-wise <code>this[i] += other[i]</code>.
+	 */
+	public MoneyVector add(MoneyVector other) {
+		if (other.units.length != units.length) {
+			throw new IllegalArgumentException("Vector sizes differ: " + units.length + " and " + other.units.length);
+		}
+		if (other.currency != currency) {
+			throw new IllegalArgumentException("Currency mismatch");
+		}
+		long[] addend = other.units;
+		if (maxMagnitude() > Long.MAX_VALUE - other.maxMagnitude()) {
+			long[] result = new long[units.length];
+			for (int i = 0; i < units.length; i++) {
+				result[i] = Math.addExact(units[i], addend[i]);
+			}
+			System.arraycopy(result, 0, units, 0, units.length);
+			return this;
+		}
+		for (int i = 0; i < units.length; i++) {
+			units[i] += addend[i];
+		}
+		return this;
+	}
+
+	public MoneyVector copy() {
+		return new MoneyVector(Arrays.copyOf(units, units.length), currency);
+	}
+
+	/**
+	 *
+	 * @return immutable projection, elements are created on access
+	 */
+	public List<Money> asList() {
+		return new AbstractList<Money>() {
+			@Override
+			public Money get(int index) {
+				return MoneyVector.this.get(index);
+			}
+
+			@Override
+			public int size() {
+				return units.length;
+			}
+		};
+	}
+
+	private long maxMagnitude() {
+		long max = 0;
+		long min = 0;
+		for (int i = 0; i < units.length; i++) {
+			max = Math.max(max, units[i]);
+			min = Math.min(min, units[i]);
+		}
+		return min == Long.MIN_VALUE ? Long.MAX_VALUE : Math.max(max, -min);
+	}
+
+	private void applyExact(BigDecimal fraction) {
+		long[] result = new long[units.length];
+		for (int i = 0; i < units.length; i++) {
+			result[i] = BigDecimal.valueOf(units[i]).multiply(fraction).setScale(0, RoundingMode.HALF_EVEN)
+					.longValueExact();
+		}
+		System.arraycopy(result, 0, units, 0, units.length);
+	}
+
+	private void checkCurrency(Money value) {
+		if (value.getCurrencyOrdinal() != currency && !value.isZero()) {
+			throw new IllegalArgumentException("Currency mismatch");
+		}
+	}
+
+	private void checkNotEmpty() {
+		if (units.length == 0) {
+			throw new NoSuchElementException("Money vector is empty");
+		}
+	}
+}
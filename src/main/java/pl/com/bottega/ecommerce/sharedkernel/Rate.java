@@ -0,0 +1,158 @@
+package pl.com.bottega.ecommerce.sharedkernel;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact decimal ratio used to multiply {@link Money}, e.g. tax rates,
+ * discounts or comparison tolerances.<br>
+ * Kept as a scaled integer (<code>23% = 23 / 100</code>), so applying it to
+ * money is one long multiplication and division instead of building a
+ * {@link BigDecimal} from a binary double. Whole percents from 0 to 100 are
+ * cached.
+ */
+public final class Rate {
+
+	private static final int MAX_SCALE = 18;
+
+	private static final Rate[] PERCENTS = new Rate[101];
+
+	static {
+		for (int i = 0; i < PERCENTS.length; i++) {
+			PERCENTS[i] = new Rate(BigDecimal.valueOf(i, 2));
+		}
+	}
+
+	public static final Rate ZERO = PERCENTS[0];
+
+	public static final Rate ONE = PERCENTS[100];
+
+	private final BigDecimal value;
+
+	/**
+	 * value = numerator / divisor; divisor is 0 when value does not fit into
+	 * a long with at most {@value #MAX_SCALE} decimal places
+	 */
+	private final long numerator;
+
+	private final long divisor;
+
+	private Rate(BigDecimal value) {
+		BigDecimal normalized = value.stripTrailingZeros();
+		if (normalized.scale() < 0) {
+			normalized = normalized.setScale(0);
+		}
+		this.value = normalized;
+		if (normalized.scale() <= MAX_SCALE && normalized.unscaledValue().bitLength() < Long.SIZE) {
+			this.numerator = normalized.unscaledValue().longValue();
+			this.divisor = pow10(normalized.scale());
+		} else {
+			this.numerator = 0;
+			this.divisor = 0;
+		}
+	}
+
+	/**
+	 * @param fraction rate as a fraction, e.g. 0.23 for 23%
+	 */
+	public static Rate of(BigDecimal fraction) {
+		return new Rate(fraction);
+	}
+
+	public static Rate percent(long percent) {
+		if (percent >= 0 && percent < PERCENTS.length) {
+			return PERCENTS[(int) percent];
+		}
+		return new Rate(BigDecimal.valueOf(percent, 2));
+	}
+
+	public static Rate percent(BigDecimal percent) {
+		return new Rate(percent.movePointLeft(2));
+	}
+
+	/**
+	 * Decimal value of the double as it is written, e.g. 7.5 is exactly 7.5%.
+	 */
+	public static Rate percent(double percent) {
+		long whole = (long) percent;
+		if (whole == percent) {
+			return percent(whole);
+		}
+		return percent(BigDecimal.valueOf(percent));
+	}
+
+	/**
+	 * @return rate as a fraction, e.g. 0.23 for 23%
+	 */
+	public BigDecimal toBigDecimal() {
+		return value;
+	}
+
+	public BigDecimal toPercent() {
+		return value.movePointRight(2);
+	}
+
+	/**
+	 * Multiplies an amount of minor units by this rate, rounding half even.
+	 *
+	 * @throws ArithmeticException
+	 *             if the result cannot be computed in long arithmetic
+	 */
+	long applyTo(long units) {
+		if (divisor == 0) {
+			throw new ArithmeticException("Rate is not representable as a scaled long: " + value);
+		}
+		return divideHalfEven(Math.multiplyExact(units, numerator), divisor);
+	}
+
+	long getNumerator() {
+		return numerator;
+	}
+
+	long getDivisor() {
+		return divisor;
+	}
+
+	static long divideHalfEven(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+		long doubledRemainder = Math.abs(remainder) * 2;
+		long absDivisor = Math.abs(divisor);
+		if (doubledRemainder > absDivisor || (doubledRemainder == absDivisor && (quotient & 1) != 0)) {
+			return (dividend < 0) == (divisor < 0) ? quotient + 1 : quotient - 1;
+		}
+		return quotient;
+	}
+
+	private static long pow10(int exponent) {
+		long result = 1;
+		for (int i = 0; i < exponent; i++) {
+			result *= 10;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return toPercent().stripTrailingZeros().toPlainString() + "%";
+	}
+
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Rate other = (Rate) obj;
+		return value.equals(other.value);
+	}
+}
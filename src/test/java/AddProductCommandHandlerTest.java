@@ -3,6 +3,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.sales.application.api.command.AddProductCommand;
@@ -128,6 +129,28 @@ public class AddProductCommandHandlerTest {
 
     }
 
+    @Test
+    public void concurrentlySavedReservationShouldBeLoadedAgainTest() {
+
+        doThrow(new OptimisticLockException(new Id("1"), 0, 1)).doNothing().when(reservationRepository).save(any());
+
+        addProductCommandHandler.handle(addProductCommand);
+
+        verify(reservationRepository, times(2)).load(new Id("1"));
+        verify(reservationRepository, times(2)).save(reservation);
+        verify(productRepository, times(1)).load(new Id("1"));
+
+    }
+
+    @Test(expected = OptimisticLockException.class)
+    public void conflictShouldBeRethrownWhenRetriesRunOutTest() {
+
+        doThrow(new OptimisticLockException(new Id("1"), 0, 1)).when(reservationRepository).save(any());
+
+        addProductCommandHandler.handle(addProductCommand);
+
+    }
+
     @Test
     public void equalsTest(){
         Assert.assertTrue(true);
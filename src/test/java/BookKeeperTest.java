@@ -6,12 +6,17 @@ import org.mockito.internal.matchers.Matches;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
 import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
 import pl.com.bottega.ecommerce.sales.domain.invoicing.*;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
 import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
 import pl.com.bottega.ecommerce.sharedkernel.Money;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -146,4 +151,72 @@ public class BookKeeperTest {
 
     }
 
+    @Test
+    public void parallelIssuanceShouldKeepLineOrderAndTotalsTest() {
+
+        TaxPolicy flatTax = (type, net) -> new Tax(net.multiplyBy(0.25), "25%");
+        for (int i = 0; i < 1000; i++) {
+            Product product = new Product(Id.generate(), new Money(i), "product" + i, ProductType.STANDARD);
+            invoiceRequest.add(new RequestItem(product.generateSnapshot(), 1, new Money(i)));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        Invoice sequential = bookKeeper.issuance(invoiceRequest, flatTax);
+        Invoice parallel = new BookKeeper(new InvoiceFactory(), pool, 10).issuance(invoiceRequest, flatTax);
+        pool.shutdown();
+
+        Assert.assertThat(parallel.getItems().size(), is(equalTo(1000)));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertThat(parallel.getItems().get(i).getProduct(), is(equalTo(sequential.getItems().get(i).getProduct())));
+        }
+        Assert.assertThat(parallel.getNet(), is(equalTo(sequential.getNet())));
+        Assert.assertThat(parallel.getGros(), is(equalTo(sequential.getGros())));
+
+    }
+
+    @Test
+    public void batchIssuanceShouldPassEveryInvoiceToSinkTest() {
+
+        TaxPolicy flatTax = (type, net) -> new Tax(net.multiplyBy(0.25), "25%");
+        Product product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+        ConcurrentLinkedQueue<Invoice> issued = new ConcurrentLinkedQueue<>();
+
+        IssuanceReport report = bookKeeper.issuance(IntStream.range(0, 500).mapToObj(i -> {
+            InvoiceRequest request = new InvoiceRequest(clientData);
+            request.add(new RequestItem(product.generateSnapshot(), 1, new Money(10)));
+            return request;
+        }), flatTax, issued::add, 4);
+
+        Assert.assertThat(issued.size(), is(equalTo(500)));
+        Assert.assertThat(report.getInvoiceCount(), is(equalTo(500L)));
+        for (Invoice invoice : issued) {
+            Assert.assertThat(invoice.getGros(), is(equalTo(new Money(12.5))));
+        }
+
+    }
+
+    @Test
+    public void errorInBatchIssuanceShouldFailTheRunTest() {
+
+        TaxPolicy flatTax = (type, net) -> new Tax(net.multiplyBy(0.25), "25%");
+        Product product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+        AtomicInteger accepted = new AtomicInteger();
+
+        try {
+            bookKeeper.issuance(IntStream.range(0, 100).mapToObj(i -> {
+                InvoiceRequest request = new InvoiceRequest(clientData);
+                request.add(new RequestItem(product.generateSnapshot(), 1, new Money(10)));
+                return request;
+            }), flatTax, invoice -> {
+                if (accepted.incrementAndGet() == 10) {
+                    throw new AssertionError("sink failed");
+                }
+            }, 4);
+            Assert.fail("Error was not rethrown");
+        } catch (AssertionError e) {
+            Assert.assertThat(e.getMessage(), is(equalTo("sink failed")));
+        }
+
+    }
+
 }
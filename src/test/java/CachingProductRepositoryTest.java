@@ -0,0 +1,122 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.CachingProductRepository;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductRepository;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingProductRepositoryTest {
+
+    private ProductRepository productRepository;
+    private ManualClock clock;
+    private CachingProductRepository cachingProductRepository;
+
+    @Before
+    public void setup() {
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.load(any(Id.class))).then(invocation ->
+                new Product((Id) invocation.getArguments()[0], new Money(10), "product", ProductType.STANDARD));
+        clock = new ManualClock(0);
+
+        cachingProductRepository = new CachingProductRepository(productRepository, 100, 1, TimeUnit.MINUTES, clock);
+    }
+
+    @Test
+    public void repeatedLoadShouldCallDecoratedRepositoryOnceTest() {
+
+        Id productId = Id.generate();
+        Product product = cachingProductRepository.load(productId);
+
+        Assert.assertThat(cachingProductRepository.load(productId), is(sameInstance(product)));
+        verify(productRepository, times(1)).load(productId);
+        Assert.assertThat(cachingProductRepository.getHitCount(), is(equalTo(1L)));
+
+    }
+
+    @Test
+    public void expiredProductShouldBeLoadedAgainTest() {
+
+        Id productId = Id.generate();
+        cachingProductRepository.load(productId);
+        clock.now = TimeUnit.MINUTES.toMillis(1);
+        cachingProductRepository.load(productId);
+
+        verify(productRepository, times(2)).load(productId);
+
+    }
+
+    @Test
+    public void invalidationShouldForceReloadTest() {
+
+        Id productId = Id.generate();
+        cachingProductRepository.load(productId).markAsRemoved();
+        cachingProductRepository.invalidate(productId);
+
+        Assert.assertThat(cachingProductRepository.load(productId).isAvailable(), is(true));
+        verify(productRepository, times(2)).load(productId);
+
+    }
+
+    @Test
+    public void cacheShouldNotGrowOverMaximumSizeTest() {
+
+        for (int i = 0; i < 500; i++) {
+            cachingProductRepository.load(Id.generate());
+        }
+
+        Assert.assertTrue(cachingProductRepository.size() <= 100);
+        Assert.assertThat(cachingProductRepository.getEvictionCount(), is(equalTo(500L - cachingProductRepository.size())));
+
+    }
+
+    @Test
+    public void concurrentMissesShouldBeCoalescedTest() throws Exception {
+
+        Id productId = Id.generate();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Product product = new Product(productId, new Money(10), "product", ProductType.STANDARD);
+        when(productRepository.load(productId)).then(invocation -> {
+            loading.countDown();
+            release.await();
+            return product;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Product>> loads = new ArrayList<Future<Product>>();
+        loads.add(executor.submit(() -> cachingProductRepository.load(productId)));
+        loading.await();
+        for (int i = 0; i < 7; i++) {
+            loads.add(executor.submit(() -> cachingProductRepository.load(productId)));
+        }
+        while (cachingProductRepository.getMissCount() < 8) {
+            Thread.yield();
+        }
+        release.countDown();
+        for (Future<Product> load : loads) {
+            Assert.assertThat(load.get(), is(sameInstance(product)));
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+
+        Assert.assertThat(cachingProductRepository.getLoadCount(), is(equalTo(1L)));
+
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.CachingTaxPolicy;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.Tax;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.TaxPolicy;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingTaxPolicyTest {
+
+    private TaxPolicy taxPolicy;
+    private CachingTaxPolicy cachingTaxPolicy;
+
+    @Before
+    public void setup() {
+        taxPolicy = mock(TaxPolicy.class);
+        when(taxPolicy.calculateTax(any(ProductType.class), any(Money.class))).thenReturn(new Tax(new Money(1), "23%"));
+
+        cachingTaxPolicy = new CachingTaxPolicy(taxPolicy, 2);
+    }
+
+    @Test
+    public void repeatedPairShouldCallDecoratedPolicyOnceTest() {
+
+        cachingTaxPolicy.calculateTax(ProductType.FOOD, new Money(10));
+        cachingTaxPolicy.calculateTax(ProductType.FOOD, new Money(10));
+
+        verify(taxPolicy, times(1)).calculateTax(ProductType.FOOD, new Money(10));
+        Assert.assertThat(cachingTaxPolicy.getHitCount(), is(equalTo(1L)));
+        Assert.assertThat(cachingTaxPolicy.getMissCount(), is(equalTo(1L)));
+
+    }
+
+    @Test
+    public void cacheShouldNotGrowOverMaximumSizeTest() {
+
+        for (int i = 0; i < 10; i++) {
+            cachingTaxPolicy.calculateTax(ProductType.STANDARD, new Money(i));
+        }
+
+        Assert.assertTrue(cachingTaxPolicy.size() <= 2);
+        Assert.assertThat(cachingTaxPolicy.getEvictionCount(), is(equalTo(10L - cachingTaxPolicy.size())));
+
+    }
+
+    @Test
+    public void invalidationShouldForceRecalculationTest() {
+
+        cachingTaxPolicy.calculateTax(ProductType.DRUG, new Money(10));
+        cachingTaxPolicy.invalidate(ProductType.DRUG);
+        cachingTaxPolicy.calculateTax(ProductType.DRUG, new Money(10));
+
+        verify(taxPolicy, times(2)).calculateTax(ProductType.DRUG, new Money(10));
+
+    }
+
+}
@@ -0,0 +1,330 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.EventSourcedReservationRepository;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservedProduct;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class EventSourcedReservationRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    EventSourcedReservationRepository repository;
+    Product product;
+    Product product2;
+
+    @Before
+    public void setup() throws Exception {
+        repository = open(100);
+        product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+        product2 = new Product(Id.generate(), new Money(2.5), "product2", ProductType.FOOD);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    public void reservationShouldBeRebuiltFromLogAfterReopeningTest() throws Exception {
+
+        Reservation reservation = newReservation();
+        reservation.add(product, 1);
+        repository.save(reservation);
+        reservation = repository.load(reservation.getId());
+        reservation.add(product, 2);
+        reservation.add(product2, 4);
+        repository.save(reservation);
+        repository.close();
+
+        repository = open(100);
+        Reservation rebuilt = repository.load(reservation.getId());
+
+        Assert.assertThat(rebuilt.getVersion(), is(equalTo(2L)));
+        Assert.assertThat(rebuilt.getClientData().getName(), is(equalTo("client")));
+        List<ReservedProduct> reserved = rebuilt.getReservedProducts();
+        Assert.assertThat(reserved.get(0).getQuantity(), is(equalTo(3)));
+        Assert.assertThat(reserved.get(1).getTotalCost(), is(equalTo(new Money(10))));
+
+    }
+
+    @Test
+    public void reservationShouldBeRebuiltFromSnapshotAndLogTailTest() throws Exception {
+
+        Reservation closed = newReservation();
+        closed.add(product, 1);
+        repository.close();
+        repository = open(3);
+        repository.save(closed);
+        for (int i = 0; i < 5; i++) {
+            repository.save(newReservation());
+        }
+        closed = repository.load(closed.getId());
+        closed.close();
+        repository.save(closed);
+        repository.close();
+
+        Assert.assertThat(new File(folder.getRoot(), "reservations-00000000.log").exists(), is(false));
+        repository = open(3);
+
+        Assert.assertThat(repository.size(), is(equalTo(6)));
+        Assert.assertThat(repository.load(closed.getId()).isClosed(), is(true));
+        Assert.assertThat(repository.load(closed.getId()).getVersion(), is(equalTo(2L)));
+
+    }
+
+    @Test
+    public void tornRecordAtEndOfLogShouldBeDroppedTest() throws Exception {
+
+        Reservation reservation = newReservation();
+        repository.save(reservation);
+        repository.close();
+        try (FileOutputStream log = new FileOutputStream(new File(folder.getRoot(), "reservations-00000000.log"), true)) {
+            log.write(new byte[] { 0, 0, 0, 40, 1, 2 });
+        }
+
+        repository = open(100);
+        Reservation loaded = repository.load(reservation.getId());
+        loaded.add(product, 1);
+        repository.save(loaded);
+        repository.close();
+        repository = open(100);
+
+        Assert.assertThat(repository.load(reservation.getId()).contains(product), is(true));
+
+    }
+
+    @Test(expected = OptimisticLockException.class)
+    public void staleSaveShouldBeRejectedTest() {
+
+        Reservation reservation = newReservation();
+        repository.save(reservation);
+        Reservation stale = repository.load(reservation.getId());
+        repository.save(repository.load(reservation.getId()));
+
+        repository.save(stale);
+
+    }
+
+    @Test
+    public void concurrentSavesDuringBackgroundSnapshotsShouldSurviveReopeningTest() throws Exception {
+
+        repository.close();
+        repository = open(7);
+        List<Reservation> reservations = new ArrayList<Reservation>();
+        for (int i = 0; i < 8; i++) {
+            reservations.add(newReservation());
+            repository.save(reservations.get(i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> saves = new ArrayList<Future<?>>();
+        for (Reservation reservation : reservations) {
+            saves.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    Reservation loaded = repository.load(reservation.getId());
+                    loaded.add(product, 1);
+                    repository.save(loaded);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> save : saves) {
+            save.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        repository.close();
+
+        repository = open(7);
+
+        for (Reservation reservation : reservations) {
+            Reservation rebuilt = repository.load(reservation.getId());
+            Assert.assertThat(rebuilt.getVersion(), is(equalTo(51L)));
+            Assert.assertThat(rebuilt.getReservedProducts().get(0).getQuantity(), is(equalTo(50)));
+        }
+
+    }
+
+    @Test
+    public void partiallyWrittenRecordShouldBeCutOffTest() throws Exception {
+
+        repository.close();
+        boolean[] failNextWrite = { false };
+        repository = new EventSourcedReservationRepository(folder.getRoot(), 1024 * 1024, 100, false) {
+            @Override
+            protected FileChannel openChannel(Path path, OpenOption... options) throws IOException {
+                return new TearingChannel(FileChannel.open(path, options), failNextWrite);
+            }
+        };
+        Reservation first = newReservation();
+        repository.save(first);
+        Reservation torn = newReservation();
+        failNextWrite[0] = true;
+        try {
+            repository.save(torn);
+            Assert.fail("failed write acknowledged");
+        } catch (UncheckedIOException e) {
+            Assert.assertThat(repository.load(torn.getId()) == null, is(true));
+        }
+        Reservation last = newReservation();
+        repository.save(last);
+        repository.close();
+
+        repository = open(100);
+
+        Assert.assertThat(repository.size(), is(equalTo(2)));
+        Assert.assertThat(repository.load(first.getId()).getVersion(), is(equalTo(1L)));
+        Assert.assertThat(repository.load(last.getId()).getVersion(), is(equalTo(1L)));
+
+    }
+
+    private EventSourcedReservationRepository open(int snapshotInterval) throws Exception {
+        return new EventSourcedReservationRepository(folder.getRoot(), 1024 * 1024, snapshotInterval, false);
+    }
+
+    private Reservation newReservation() {
+        return new Reservation(Id.generate(), Reservation.ReservationStatus.OPENED,
+                new ClientData(Id.generate(), "client"), new Date());
+    }
+
+    /**
+     * Writes half of the first buffer and fails once armed.
+     */
+    static class TearingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private final boolean[] failNextWrite;
+
+        TearingChannel(FileChannel channel, boolean[] failNextWrite) {
+            this.channel = channel;
+            this.failNextWrite = failNextWrite;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            if (failNextWrite[0]) {
+                failNextWrite[0] = false;
+                ByteBuffer half = srcs[offset].duplicate();
+                half.limit(half.position() + half.remaining() / 2);
+                channel.write(half);
+                throw new IOException("disk full");
+            }
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.TimeOrderedIdGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+
+public class IdTest {
+
+    private static final String UUID_TEXT = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+    // new Id("1") and new Id(UUID_TEXT) serialized when Id was a plain String holder
+    private static final String LEGACY_TEXT_ID = "rO0ABXNyADxwbC5jb20uYm90dGVnYS5lY29tbWVyY2UuY2Fub25pY2FsbW9kZWwucHVibGlzaGVkbG"
+            + "FuZ3VhZ2UuSWTJU/yqo9IMfgIAAUwAAmlkdAASTGphdmEvbGFuZy9TdHJpbmc7eHB0AAEx";
+    private static final String LEGACY_UUID_ID = "rO0ABXNyADxwbC5jb20uYm90dGVnYS5lY29tbWVyY2UuY2Fub25pY2FsbW9kZWwucHVibGlzaGVkbG"
+            + "FuZ3VhZ2UuSWTJU/yqo9IMfgIAAUwAAmlkdAASTGphdmEvbGFuZy9TdHJpbmc7eHB0ACQwZjhmYWQ1Yi1kOWNiLTQ2OWYtYTE2NS03MDg2NzcyODk1MGU=";
+
+    @Test
+    public void idParsedFromTextShouldEqualIdFromBitsTest() {
+
+        UUID uuid = UUID.fromString(UUID_TEXT);
+
+        Id parsed = new Id(UUID_TEXT);
+        Id fromBits = Id.of(uuid);
+
+        Assert.assertThat(parsed, is(equalTo(fromBits)));
+        Assert.assertThat(parsed.hashCode(), is(equalTo(fromBits.hashCode())));
+        Assert.assertThat(fromBits.getId(), is(equalTo(UUID_TEXT)));
+
+    }
+
+    @Test
+    public void arbitraryTextIdShouldKeepItsTextTest() {
+
+        Id upperCase = new Id(UUID_TEXT.toUpperCase());
+
+        Assert.assertThat(new Id("1"), is(equalTo(new Id("1"))));
+        Assert.assertThat(upperCase.getId(), is(equalTo(UUID_TEXT.toUpperCase())));
+        Assert.assertThat(upperCase, is(not(equalTo(new Id(UUID_TEXT)))));
+
+    }
+
+    @Test
+    public void legacySerializedIdsShouldBeReadableTest() throws Exception {
+
+        Assert.assertThat(deserialize(Base64.getDecoder().decode(LEGACY_TEXT_ID)), is(equalTo(new Id("1"))));
+        Assert.assertThat(deserialize(Base64.getDecoder().decode(LEGACY_UUID_ID)), is(equalTo(new Id(UUID_TEXT))));
+
+    }
+
+    @Test
+    public void serializationShouldRoundTripGeneratedIdTest() throws Exception {
+
+        Id id = Id.generate();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(id);
+        out.close();
+
+        Assert.assertThat(deserialize(bytes.toByteArray()), is(equalTo(id)));
+
+    }
+
+    @Test
+    public void timeOrderedIdsShouldBeUniqueAndIncreasingWithinThreadTest() {
+
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7);
+        Set<Id> ids = new HashSet<>();
+        UUID previous = null;
+
+        for (int i = 0; i < 10000; i++) {
+            Id id = generator.generate();
+            UUID uuid = UUID.fromString(id.getId());
+            Assert.assertThat(uuid.version(), is(equalTo(7)));
+            if (previous != null) {
+                Assert.assertTrue(Long.compareUnsigned(uuid.getMostSignificantBits(), previous.getMostSignificantBits()) > 0);
+            }
+            previous = uuid;
+            ids.add(id);
+        }
+
+        Assert.assertThat(ids.size(), is(equalTo(10000)));
+
+    }
+
+    private Id deserialize(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return (Id) in.readObject();
+    }
+
+}
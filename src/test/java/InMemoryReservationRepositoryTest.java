@@ -0,0 +1,175 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ddd.support.domain.OptimisticLockException;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.application.api.command.AddProductCommandBuilder;
+import pl.com.bottega.ecommerce.sales.application.api.handler.AddProductCommandHandler;
+import pl.com.bottega.ecommerce.sales.application.api.handler.AddProductCommandHandlerBuilder;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
+import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductRepository;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.InMemoryReservationRepository;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InMemoryReservationRepositoryTest {
+
+    InMemoryReservationRepository repository;
+    Product product;
+
+    @Before
+    public void setup() {
+        repository = new InMemoryReservationRepository(3);
+        product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+    }
+
+    @Test
+    public void loadedReservationShouldBeIndependentCopyTest() {
+
+        Reservation reservation = newReservation();
+        repository.save(reservation);
+
+        Reservation loaded = repository.load(reservation.getId());
+        loaded.add(product, 1);
+
+        Assert.assertThat(loaded.getVersion(), is(equalTo(1L)));
+        Assert.assertThat(repository.load(reservation.getId()).contains(product), is(false));
+
+    }
+
+    @Test
+    public void staleSaveShouldBeRejectedTest() {
+
+        Reservation reservation = newReservation();
+        repository.save(reservation);
+        Reservation first = repository.load(reservation.getId());
+        Reservation second = repository.load(reservation.getId());
+
+        first.add(product, 1);
+        repository.save(first);
+        second.add(product, 2);
+        try {
+            repository.save(second);
+            Assert.fail("stale save accepted");
+        } catch (OptimisticLockException e) {
+            Assert.assertThat(e.getActualVersion(), is(equalTo(2L)));
+        }
+
+        Assert.assertThat(repository.load(reservation.getId()).getReservedProducts().get(0).getQuantity(), is(equalTo(1)));
+        Assert.assertThat(repository.getConflictCount(), is(equalTo(1L)));
+
+    }
+
+    @Test
+    public void fullRepositoryShouldEvictClosedReservationsTest() {
+
+        Reservation closed = newReservation();
+        closed.close();
+        repository.save(closed);
+        repository.save(newReservation());
+        repository.save(newReservation());
+
+        repository.save(newReservation());
+
+        Assert.assertThat(repository.size(), is(equalTo(3)));
+        Assert.assertThat(repository.getEvictionCount(), is(equalTo(1L)));
+        Assert.assertThat(repository.load(closed.getId()) == null, is(true));
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullRepositoryWithoutClosedReservationsShouldRejectNewOneTest() {
+
+        for (int i = 0; i < 4; i++) {
+            repository.save(newReservation());
+        }
+
+    }
+
+    @Test
+    public void parallelAddsShouldNotLoseUpdatesTest() throws Exception {
+
+        repository = new InMemoryReservationRepository();
+        Reservation reservation = newReservation();
+        repository.save(reservation);
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.load(any())).thenReturn(product);
+        AddProductCommandHandler handler = new AddProductCommandHandlerBuilder()
+                .withReservationRepository(repository)
+                .withProductRepository(productRepository)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> adds = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 400; i++) {
+            adds.add(executor.submit(() -> {
+                try {
+                    handler.handle(new AddProductCommandBuilder().withOrderId(reservation.getId())
+                            .withProductId(product.getId()).withQuantity(1).build());
+                    return true;
+                } catch (OptimisticLockException e) {
+                    return false;
+                }
+            }));
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        int succeeded = 0;
+        for (Future<Boolean> add : adds) {
+            succeeded += add.get() ? 1 : 0;
+        }
+
+        Assert.assertThat(repository.load(reservation.getId()).getReservedProducts().get(0).getQuantity(),
+                is(equalTo(succeeded)));
+        Assert.assertThat(repository.getSaveCount(), is(equalTo(succeeded + 1L)));
+
+    }
+
+    @Test
+    public void loadedReservationShouldReuseOfferItemsCalculatedBeforeSavingTest() {
+
+        Product other = new Product(Id.generate(), new Money(20), "other", ProductType.STANDARD);
+        Reservation reservation = newReservation();
+        reservation.add(product, 1);
+        reservation.add(other, 1);
+        List<String> priced = new ArrayList<String>();
+        DiscountPolicy policy = (discounted, quantity, regularCost) -> {
+            priced.add(discounted.getName());
+            return null;
+        };
+        Offer offer = reservation.calculateOffer(policy);
+        repository.save(reservation);
+
+        Reservation loaded = repository.load(reservation.getId());
+        loaded.add(other, 1);
+        Offer recalculated = loaded.calculateOffer(policy);
+
+        Assert.assertThat(priced, is(equalTo(Arrays.asList("product", "other", "product", "other"))));
+        Assert.assertThat(recalculated.getAvailabeItems().get(0) == offer.getAvailabeItems().get(0), is(true));
+
+    }
+
+    private Reservation newReservation() {
+        return new Reservation(Id.generate(), Reservation.ReservationStatus.OPENED,
+                new ClientData(Id.generate(), "client"), new Date());
+    }
+}
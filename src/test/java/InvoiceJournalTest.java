@@ -0,0 +1,214 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.*;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+public class InvoiceJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    BookKeeper bookKeeper;
+    TaxPolicy taxPolicy;
+    InvoiceJournal journal;
+
+    @Before
+    public void setup() throws Exception {
+        bookKeeper = new BookKeeper(new InvoiceFactory());
+        taxPolicy = (productType, net) -> new Tax(net.multiplyBy(0.23), "23%");
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void appendedInvoiceShouldBeReadById() {
+
+        Invoice invoice = issue(3);
+        journal.append(invoice);
+
+        Invoice read = journal.read(invoice.getId());
+
+        assertSameInvoice(read, invoice);
+        Assert.assertThat(journal.read(Id.generate()), is(nullValue()));
+
+    }
+
+    @Test
+    public void invoiceOfClientWithoutNameShouldBeJournaled() throws Exception {
+
+        InvoiceRequest request = new InvoiceRequest(new ClientData(Id.generate(), null));
+        Product product = new Product(Id.generate(), new Money(1), "product", ProductType.STANDARD);
+        request.add(new RequestItem(product.generateSnapshot(), 1, new Money(1)));
+        Invoice invoice = bookKeeper.issuance(request, taxPolicy);
+        journal.append(invoice);
+        journal.close();
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+
+        Invoice read = journal.read(invoice.getId());
+        assertSameInvoice(read, invoice);
+        Assert.assertThat(read.getClient().getName(), is(nullValue()));
+
+    }
+
+    @Test
+    public void invoiceOfProductWithoutNameShouldBeJournaled() throws Exception {
+
+        InvoiceRequest request = new InvoiceRequest(new ClientData(Id.generate(), "client"));
+        Product product = new Product(Id.generate(), new Money(1), null, ProductType.STANDARD);
+        request.add(new RequestItem(product.generateSnapshot(), 1, new Money(1)));
+        Invoice invoice = bookKeeper.issuance(request, taxPolicy);
+        journal.append(invoice);
+        journal.close();
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+
+        Invoice read = journal.read(invoice.getId());
+        assertSameInvoice(read, invoice);
+        Assert.assertThat(read.getItems().get(0).getProduct().getName(), is(nullValue()));
+
+    }
+
+    @Test
+    public void invoicesShouldSurviveReopeningAcrossSegments() throws Exception {
+
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        for (int i = 0; i < 50; i++) {
+            Invoice invoice = issue(i % 5 + 1);
+            invoices.add(invoice);
+            journal.append(invoice);
+        }
+        journal.close();
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+
+        Assert.assertThat(new File(folder.getRoot(), "invoices-00000001.journal").exists(), is(true));
+        Assert.assertThat(journal.size(), is(equalTo(50)));
+        for (Invoice invoice : invoices) {
+            assertSameInvoice(journal.read(invoice.getId()), invoice);
+        }
+        List<Invoice> scanned = new ArrayList<Invoice>();
+        journal.scan(scanned::add);
+        Assert.assertThat(scanned.size(), is(equalTo(50)));
+        assertSameInvoice(scanned.get(49), invoices.get(49));
+
+    }
+
+    @Test
+    public void recordsMissingFromIndexShouldBeRecoveredOnOpen() throws Exception {
+
+        Invoice first = issue(1);
+        Invoice second = issue(2);
+        journal.append(first);
+        journal.append(second);
+        journal.close();
+        File index = new File(folder.getRoot(), "invoices-00000000.index");
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+
+        assertSameInvoice(journal.read(second.getId()), second);
+        Assert.assertThat(journal.size(), is(equalTo(2)));
+
+    }
+
+    @Test
+    public void tornIndexEntryOfLostRecordShouldNotPrecedeNewEntries() throws Exception {
+
+        Invoice first = issue(1);
+        Invoice second = issue(2);
+        journal.append(first);
+        journal.append(second);
+        journal.close();
+        File index = new File(folder.getRoot(), "invoices-00000000.index");
+        long entrySize = index.length() / 2;
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "invoices-00000000.journal"), "rw")) {
+            file.seek(8 + file.readInt());
+            file.writeInt(0);
+        }
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+        Invoice third = issue(3);
+        journal.append(third);
+        journal.close();
+
+        Assert.assertThat(index.length(), is(equalTo(2 * entrySize)));
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+        Assert.assertThat(journal.size(), is(equalTo(2)));
+        assertSameInvoice(journal.read(first.getId()), first);
+        assertSameInvoice(journal.read(third.getId()), third);
+        Assert.assertThat(journal.read(second.getId()), is(nullValue()));
+
+    }
+
+    @Test
+    public void concurrentAppendsShouldAllBeDurable() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Invoice>> appended = new ArrayList<Future<Invoice>>();
+        for (int i = 0; i < 40; i++) {
+            appended.add(executor.submit(() -> {
+                Invoice invoice = issue(2);
+                journal.accept(invoice);
+                return invoice;
+            }));
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        journal.close();
+
+        journal = new InvoiceJournal(folder.getRoot(), 4096);
+        for (Future<Invoice> invoice : appended) {
+            assertSameInvoice(journal.read(invoice.get().getId()), invoice.get());
+        }
+
+    }
+
+    private Invoice issue(int lines) {
+        InvoiceRequest request = new InvoiceRequest(new ClientData(Id.generate(), "client"));
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product(Id.generate(), new Money(i + 1), "product" + i, ProductType.STANDARD);
+            request.add(new RequestItem(product.generateSnapshot(), i + 1, new Money(i + 1.5)));
+        }
+        return bookKeeper.issuance(request, taxPolicy);
+    }
+
+    private void assertSameInvoice(Invoice actual, Invoice expected) {
+        Assert.assertThat(actual.getId(), is(equalTo(expected.getId())));
+        Assert.assertThat(actual.getClient().getAggregateId(), is(equalTo(expected.getClient().getAggregateId())));
+        Assert.assertThat(actual.getItems().size(), is(equalTo(expected.getItems().size())));
+        Assert.assertThat(actual.getNet(), is(equalTo(expected.getNet())));
+        Assert.assertThat(actual.getGros(), is(equalTo(expected.getGros())));
+        Assert.assertThat(actual.getItems().get(0).getProduct(), is(equalTo(expected.getItems().get(0).getProduct())));
+    }
+}
@@ -0,0 +1,221 @@
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.TimeOrderedIdGenerator;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.*;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyVector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+public class InvoiceStorageTest {
+
+    private static final int LINES = 2500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    InvoiceRequest invoiceRequest;
+    TaxPolicy taxPolicy;
+
+    @Before
+    public void setup() {
+        invoiceRequest = new InvoiceRequest(new ClientData(Id.generate(), "client"));
+        for (int i = 0; i < LINES; i++) {
+            ProductType type = i % 2 == 0 ? ProductType.STANDARD : ProductType.FOOD;
+            Product product = new Product(Id.generate(), new Money(i), "product" + i, type);
+            invoiceRequest.add(new RequestItem(product.generateSnapshot(), i % 7 + 1, new Money(i * 0.5)));
+        }
+        taxPolicy = (productType, net) -> new Tax(net.multiplyBy(0.23), productType == ProductType.FOOD ? null : "23%");
+    }
+
+    @Test
+    public void spilledInvoiceShouldIterateSameLinesAsHeapInvoice() throws Exception {
+        Invoice onHeap = new BookKeeper(new InvoiceFactory()).issuance(invoiceRequest, taxPolicy);
+        Invoice spilled = issueSpilling(100);
+
+        Assert.assertThat(spilled.getItems().size(), is(equalTo(LINES)));
+        Iterator<InvoiceLine> expected = onHeap.getItems().iterator();
+        for (InvoiceLine line : spilled.getItems()) {
+            assertSameLine(line, expected.next());
+        }
+        Assert.assertThat(expected.hasNext(), is(false));
+        Assert.assertThat(spilled.getNet(), is(equalTo(onHeap.getNet())));
+        Assert.assertThat(spilled.getGros(), is(equalTo(onHeap.getGros())));
+    }
+
+    @Test
+    public void spilledInvoiceShouldSupportRandomAccess() throws Exception {
+        Invoice onHeap = new BookKeeper(new InvoiceFactory()).issuance(invoiceRequest, taxPolicy);
+        List<InvoiceLine> spilled = issueSpilling(0).getItems();
+
+        for (int index : new int[] { 0, 1, 1023, 1024, 2499, 5, 2048, 2047, 1500 }) {
+            assertSameLine(spilled.get(index), onHeap.getItems().get(index));
+        }
+    }
+
+    @Test
+    public void releasingStorageShouldDeleteSpillFileAndKeepTotals() throws Exception {
+        Invoice spilled = issueSpilling(10);
+        Money gros = spilled.getGros();
+        Assert.assertThat(folder.getRoot().list().length, is(equalTo(1)));
+
+        spilled.releaseStorage();
+
+        Assert.assertThat(folder.getRoot().list().length, is(equalTo(0)));
+        Assert.assertThat(spilled.getItems().size(), is(equalTo(0)));
+        Assert.assertThat(spilled.getGros(), is(equalTo(gros)));
+    }
+
+    @Test
+    public void spilledInvoiceShouldNotKeepFilesOpen() throws Exception {
+        File descriptors = new File("/proc/self/fd");
+        Assume.assumeTrue(descriptors.isDirectory());
+        Invoice spilled = issueSpilling(10);
+        int open = descriptors.list().length;
+
+        for (int i = 0; i < 50; i++) {
+            spilled.getItems().iterator().next();
+            spilled.getItems().get(i * 40);
+        }
+
+        Assert.assertThat(descriptors.list().length, is(equalTo(open)));
+    }
+
+    @Test
+    public void unreleasedSpillFilesShouldBeSwept() throws Exception {
+        issueSpilling(10);
+        issueSpilling(10);
+
+        Assert.assertThat(InvoiceStorage.deleteSpillFiles(folder.getRoot()), is(equalTo(2)));
+        Assert.assertThat(folder.getRoot().list().length, is(equalTo(0)));
+    }
+
+    @Test
+    public void columnarInvoiceShouldReturnSameLinesAsHeapInvoice() throws Exception {
+        Invoice onHeap = new BookKeeper(new InvoiceFactory()).issuance(invoiceRequest, taxPolicy);
+        InvoiceFactory columnarFactory = new InvoiceFactory(new TimeOrderedIdGenerator(), InvoiceStorage.columnar());
+        Invoice columnar = new BookKeeper(columnarFactory).issuance(invoiceRequest, taxPolicy);
+
+        Assert.assertThat(columnar.getItems().size(), is(equalTo(LINES)));
+        for (int i = 0; i < LINES; i++) {
+            assertSameLine(columnar.getItems().get(i), onHeap.getItems().get(i));
+        }
+        Assert.assertThat(columnar.getGros(), is(equalTo(onHeap.getGros())));
+    }
+
+    @Test
+    public void columnarInvoiceShouldBeTotaledFromAmountColumns() throws Exception {
+        InvoiceFactory columnarFactory = new InvoiceFactory(new TimeOrderedIdGenerator(), InvoiceStorage.columnar());
+        Invoice columnar = new BookKeeper(columnarFactory).issuance(invoiceRequest, taxPolicy);
+
+        MoneyVector net = columnar.getNetVector();
+        MoneyVector tax = columnar.getTaxVector();
+
+        Assert.assertThat(net.size(), is(equalTo(LINES)));
+        Assert.assertThat(net.sum(), is(equalTo(columnar.getNet())));
+        Assert.assertThat(net.add(tax).sum(), is(equalTo(columnar.getGros())));
+    }
+
+    @Test
+    public void columnarInvoiceShouldShareSnapshotsOfEachDate() throws Exception {
+        Product product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+        ProductData first = product.generateSnapshot();
+        Thread.sleep(2);
+        ProductData second = product.generateSnapshot();
+        InvoiceRequest request = new InvoiceRequest(new ClientData(Id.generate(), "client"));
+        for (ProductData snapshot : new ProductData[] { first, second, copy(first), copy(second), copy(first) }) {
+            request.add(new RequestItem(snapshot, 1, new Money(10)));
+        }
+        InvoiceFactory columnarFactory = new InvoiceFactory(new TimeOrderedIdGenerator(), InvoiceStorage.columnar());
+
+        List<InvoiceLine> lines = new BookKeeper(columnarFactory).issuance(request, taxPolicy).getItems();
+
+        Assert.assertThat(lines.get(1).getProduct().getSnapshotDate(), is(equalTo(second.getSnapshotDate())));
+        Assert.assertThat(lines.get(2).getProduct(), is(sameInstance(lines.get(0).getProduct())));
+        Assert.assertThat(lines.get(3).getProduct(), is(sameInstance(lines.get(1).getProduct())));
+        Assert.assertThat(lines.get(4).getProduct(), is(sameInstance(lines.get(0).getProduct())));
+    }
+
+    @Test
+    public void failedSpillShouldKeepLinesOnHeap() throws Exception {
+        ProductData unwritable = Mockito.mock(ProductData.class);
+        Mockito.doThrow(new IOException("disk full")).when(unwritable).writeTo(Mockito.any(DataOutput.class));
+        Product product = new Product(Id.generate(), new Money(10), "product", ProductType.STANDARD);
+        ClientData client = new ClientData(Id.generate(), "client");
+        InvoiceRequest request = new InvoiceRequest(client);
+        request.add(new RequestItem(product.generateSnapshot(), 1, new Money(10)));
+        request.add(new RequestItem(unwritable, 1, new Money(20)));
+        request.add(new RequestItem(product.generateSnapshot(), 1, new Money(30)));
+        List<InvoiceLine> lines = new BookKeeper(new InvoiceFactory()).issuance(request, taxPolicy).getItems();
+        InvoiceStorage storage = InvoiceStorage.spillingToDisk(2, folder.getRoot());
+        Invoice invoice = new InvoiceFactory(new TimeOrderedIdGenerator(), storage).create(client);
+        invoice.addItem(lines.get(0));
+        invoice.addItem(lines.get(1));
+
+        try {
+            invoice.addItem(lines.get(2));
+            Assert.fail("Spill did not fail");
+        } catch (UncheckedIOException e) {
+            Assert.assertThat(e.getCause().getMessage(), is(equalTo("disk full")));
+        }
+
+        Assert.assertThat(folder.getRoot().list().length, is(equalTo(0)));
+        Assert.assertThat(invoice.getItems().size(), is(equalTo(2)));
+        Iterator<InvoiceLine> iterator = invoice.getItems().iterator();
+        Assert.assertThat(iterator.next(), is(sameInstance(lines.get(0))));
+        Assert.assertThat(iterator.next(), is(sameInstance(lines.get(1))));
+        Assert.assertThat(invoice.getItems().get(1), is(sameInstance(lines.get(1))));
+    }
+
+    @Test
+    public void invoiceBelowThresholdShouldNotTouchDisk() throws Exception {
+        Invoice invoice = issueSpilling(LINES);
+
+        Assert.assertThat(invoice.getItems().size(), is(equalTo(LINES)));
+        Assert.assertThat(folder.getRoot().list().length, is(equalTo(0)));
+    }
+
+    private Invoice issueSpilling(int threshold) {
+        InvoiceStorage storage = InvoiceStorage.spillingToDisk(threshold, folder.getRoot());
+        return new BookKeeper(new InvoiceFactory(new TimeOrderedIdGenerator(), storage)).issuance(invoiceRequest, taxPolicy);
+    }
+
+    private static ProductData copy(ProductData snapshot) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes));
+        return ProductData.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private void assertSameLine(InvoiceLine actual, InvoiceLine expected) {
+        Assert.assertThat(actual.getProduct(), is(equalTo(expected.getProduct())));
+        Assert.assertThat(actual.getProduct().getSnapshotDate(), is(equalTo(expected.getProduct().getSnapshotDate())));
+        Assert.assertThat(actual.getQuantity(), is(equalTo(expected.getQuantity())));
+        Assert.assertThat(actual.getNet(), is(equalTo(expected.getNet())));
+        Assert.assertThat(actual.getGros(), is(equalTo(expected.getGros())));
+        Assert.assertThat(actual.getTax().getAmount(), is(equalTo(expected.getTax().getAmount())));
+        Assert.assertThat(actual.getTax().getDescription(), is(equalTo(expected.getTax().getDescription())));
+    }
+}
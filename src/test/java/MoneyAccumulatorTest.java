@@ -0,0 +1,62 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyAccumulator;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class MoneyAccumulatorTest {
+
+    @Test
+    public void accumulatorShouldSumLikeMoneyAddTest() {
+
+        Money a = new Money(new BigDecimal("10.15"));
+        Money b = new Money(new BigDecimal("0.99"));
+
+        Money total = new MoneyAccumulator().add(a).add(b, 3).subtract(a).toMoney();
+
+        Assert.assertThat(total, is(equalTo(a.add(b.multiplyBy(3)).subtract(a))));
+
+    }
+
+    @Test
+    public void emptyAccumulatorShouldReturnZeroTest() {
+
+        Assert.assertThat(new MoneyAccumulator().toMoney(), is(equalTo(Money.ZERO)));
+
+    }
+
+    @Test
+    public void zeroTotalShouldAdoptCurrencyOfAddedValueTest() {
+
+        Money dollars = new Money(5, Currency.getInstance("USD"));
+
+        Money total = new MoneyAccumulator().add(dollars).toMoney();
+
+        Assert.assertThat(total.getCurrencyCode(), is(equalTo("USD")));
+
+    }
+
+    @Test
+    public void accumulatorShouldSurviveLongOverflowTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE).movePointLeft(2));
+
+        Money total = new MoneyAccumulator().add(huge).add(huge).subtract(huge).toMoney();
+
+        Assert.assertThat(total, is(equalTo(huge)));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addingDifferentCurrenciesShouldThrowTest() {
+
+        new MoneyAccumulator().add(new Money(5)).add(new Money(5, Currency.getInstance("USD")));
+
+    }
+
+}
@@ -0,0 +1,64 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyColumn;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class MoneyColumnTest {
+
+    @Test
+    public void columnShouldReturnAmountsWithTheirCurrenciesTest() {
+
+        MoneyColumn column = new MoneyColumn();
+        for (int i = 0; i < 40; i++) {
+            column.add(new Money(i, "EUR"));
+        }
+        column.add(new Money(0, "USD"));
+        column.add(new Money(2.5, "PLN"));
+
+        Assert.assertThat(column.size(), is(equalTo(42)));
+        Assert.assertThat(column.get(39), is(equalTo(new Money(39, "EUR"))));
+        Assert.assertThat(column.get(40).getCurrencyCode(), is(equalTo("USD")));
+        Assert.assertThat(column.get(41), is(equalTo(new Money(2.5, "PLN"))));
+
+    }
+
+    @Test
+    public void columnShouldKeepAmountsBeyondLongRangeTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE));
+        MoneyColumn column = new MoneyColumn();
+        column.add(new Money(1));
+        column.add(huge);
+
+        Assert.assertThat(column.get(1), is(equalTo(huge)));
+
+    }
+
+    @Test
+    public void vectorShouldSumColumnTest() {
+
+        MoneyColumn column = new MoneyColumn();
+        column.add(new Money(0, "USD"));
+        column.add(new Money(1.25));
+        column.add(new Money(2.5));
+
+        Assert.assertThat(column.toVector().sum(), is(equalTo(new Money(3.75))));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void vectorOfMixedCurrenciesShouldFailTest() {
+
+        MoneyColumn column = new MoneyColumn();
+        column.add(new Money(1.25, "EUR"));
+        column.add(new Money(2.5, "PLN"));
+
+        column.toVector();
+
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyFormatter;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.util.Currency;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class MoneyFormatterTest {
+
+    @Test
+    public void plainFormatShouldUseDotAndCurrencyCodeTest() {
+
+        Money money = new Money(new BigDecimal("-1234.05"));
+
+        Assert.assertThat(MoneyFormatter.plain().format(money), is(equalTo("-1234.05 EUR")));
+
+    }
+
+    @Test
+    public void plainFormatShouldUseScaleOfCurrencyTest() {
+
+        Assert.assertThat(MoneyFormatter.plain().format(new Money(1500, "JPY")), is(equalTo("1500 JPY")));
+        Assert.assertThat(MoneyFormatter.plain().format(new Money(new BigDecimal("0.007"),
+                Currency.getInstance("KWD"))), is(equalTo("0.007 KWD")));
+
+    }
+
+    @Test
+    public void displayFormatShouldUseLocaleSeparatorAndSymbolTest() {
+
+        Money money = new Money(new BigDecimal("12.50"), Currency.getInstance("USD"));
+
+        String germanSymbol = Currency.getInstance("USD").getSymbol(Locale.GERMANY);
+
+        Assert.assertThat(MoneyFormatter.display(Locale.GERMANY).format(money), is(equalTo("12,50 " + germanSymbol)));
+        Assert.assertThat(MoneyFormatter.display(Locale.US).format(money), is(equalTo("12.50 $")));
+
+    }
+
+    @Test
+    public void formatterShouldAppendToGivenBuffersTest() {
+
+        Money money = new Money(new BigDecimal("3.00"));
+        StringBuilder builder = new StringBuilder("total: ");
+        CharBuffer buffer = CharBuffer.allocate(16);
+
+        MoneyFormatter.plain().format(money, builder);
+        MoneyFormatter.plain().format(money, buffer);
+        buffer.flip();
+
+        Assert.assertThat(builder.toString(), is(equalTo("total: 3.00 EUR")));
+        Assert.assertThat(buffer.toString(), is(equalTo("3.00 EUR")));
+
+    }
+
+    @Test
+    public void overflowedAmountShouldBeFormattedExactlyTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE).movePointLeft(2));
+
+        Assert.assertThat(MoneyFormatter.plain().format(huge.add(huge)), is(equalTo("184467440737095516.14 EUR")));
+
+    }
+
+}
@@ -0,0 +1,126 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class MoneyTest {
+
+    @Test
+    public void addingMoneyShouldKeepTwoDecimalPlacesTest() {
+
+        Money sum = new Money(0.1).add(new Money(0.2));
+
+        Assert.assertThat(sum, is(equalTo(new Money(new BigDecimal("0.30")))));
+
+    }
+
+    @Test
+    public void constructorShouldRoundHalfEvenTest() {
+
+        Assert.assertThat(new Money(new BigDecimal("1.125")), is(equalTo(new Money(new BigDecimal("1.12")))));
+        Assert.assertThat(new Money(new BigDecimal("1.135")), is(equalTo(new Money(new BigDecimal("1.14")))));
+
+    }
+
+    @Test
+    public void multiplyByShouldRoundHalfEvenTest() {
+
+        Money money = new Money(new BigDecimal("0.05"));
+
+        Assert.assertThat(money.multiplyBy(new BigDecimal("0.5")), is(equalTo(new Money(new BigDecimal("0.02")))));
+        Assert.assertThat(money.multiplyBy(3), is(equalTo(new Money(new BigDecimal("0.15")))));
+
+    }
+
+    @Test
+    public void arithmeticShouldFallBackToBigDecimalOnOverflowTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE).movePointLeft(2));
+        Money doubled = huge.add(huge);
+
+        Assert.assertTrue(doubled.greaterThan(huge));
+        Assert.assertThat(doubled.subtract(huge), is(equalTo(huge)));
+        Assert.assertThat(huge.multiplyBy(2), is(equalTo(doubled)));
+        Assert.assertThat(doubled.subtract(huge).hashCode(), is(equalTo(huge.hashCode())));
+
+    }
+
+    @Test
+    public void zeroShouldBeCompatibleWithAnyCurrencyTest() {
+
+        Money dollars = new Money(5, Currency.getInstance("USD"));
+
+        Money sum = Money.ZERO.add(dollars);
+
+        Assert.assertThat(sum.getCurrencyCode(), is(equalTo("USD")));
+        Assert.assertThat(sum, is(equalTo(dollars)));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addingDifferentCurrenciesShouldThrowTest() {
+
+        new Money(5, Currency.getInstance("USD")).add(new Money(5));
+
+    }
+
+    @Test
+    public void moneyShouldUseMinorUnitScaleOfCurrencyTest() {
+
+        Money yen = new Money(new BigDecimal("100.5"), Currency.getInstance("JPY"));
+        Money dinars = new Money(new BigDecimal("1.0005"), Currency.getInstance("KWD"));
+
+        Assert.assertThat(yen, is(equalTo(new Money(100, "JPY"))));
+        Assert.assertThat(dinars, is(equalTo(new Money(new BigDecimal("1.000"), Currency.getInstance("KWD")))));
+
+    }
+
+    @Test
+    public void comparisonShouldIgnoreDifferentScalesTest() {
+
+        Money yen = new Money(5, "JPY");
+
+        Assert.assertTrue(yen.greaterThan(new Money(1)));
+
+    }
+
+    @Test
+    public void multiplyByRateShouldMatchExactDecimalMultiplicationTest() {
+
+        Money money = new Money(new BigDecimal("19.99"));
+
+        Assert.assertThat(money.multiplyBy(Rate.percent(23)), is(equalTo(money.multiplyBy(new BigDecimal("0.23")))));
+        Assert.assertThat(money.multiplyBy(Rate.percent(7.5)), is(equalTo(money.multiplyBy(new BigDecimal("0.075")))));
+        Assert.assertThat(new Money(new BigDecimal("0.10")).multiplyBy(Rate.percent(25)),
+                is(equalTo(new Money(new BigDecimal("0.02")))));
+
+    }
+
+    @Test
+    public void ratesWithSameValueShouldBeEqualTest() {
+
+        Assert.assertThat(Rate.percent(new BigDecimal("7.50")), is(equalTo(Rate.percent(7.5))));
+        Assert.assertThat(Rate.of(new BigDecimal("0.5")), is(equalTo(Rate.percent(50))));
+
+    }
+
+    @Test
+    public void differsLessThanShouldCompareExactlyTest() {
+
+        Money hundred = new Money(100);
+
+        Assert.assertThat(hundred.differsLessThan(new Money(new BigDecimal("99.01")), Rate.percent(1)), is(true));
+        Assert.assertThat(hundred.differsLessThan(new Money(99), Rate.percent(1)), is(false));
+        Assert.assertThat(new Money(99).differsLessThan(hundred, Rate.percent(1.5)), is(true));
+        Assert.assertThat(new Money(new BigDecimal("1E+30")).differsLessThan(new Money(new BigDecimal("0.99E+30")),
+                Rate.percent(2)), is(true));
+
+    }
+
+}
@@ -0,0 +1,99 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.MoneyVector;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class MoneyVectorTest {
+
+    private List<Money> prices = Arrays.asList(new Money(new BigDecimal("1.25")), new Money(new BigDecimal("-3.10")),
+            new Money(new BigDecimal("10.05")));
+
+    @Test
+    public void sumShouldEqualMoneyAddTest() {
+
+        Money expected = Money.ZERO;
+        for (Money price : prices) {
+            expected = expected.add(price);
+        }
+
+        Assert.assertThat(MoneyVector.of(prices).sum(), is(equalTo(expected)));
+
+    }
+
+    @Test
+    public void sumShouldBeExactBeyondLongRangeTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE).movePointLeft(2));
+
+        Money sum = MoneyVector.of(Arrays.asList(huge, huge)).sum();
+
+        Assert.assertThat(sum, is(equalTo(huge.add(huge))));
+
+    }
+
+    @Test
+    public void minAndMaxShouldReturnExtremesTest() {
+
+        MoneyVector vector = MoneyVector.of(prices);
+
+        Assert.assertThat(vector.min(), is(equalTo(prices.get(1))));
+        Assert.assertThat(vector.max(), is(equalTo(prices.get(2))));
+
+    }
+
+    @Test
+    public void applyPercentShouldRoundLikeMoneyMultiplyByTest() {
+
+        BigDecimal percent = new BigDecimal("23");
+
+        List<Money> taxes = MoneyVector.of(prices).applyPercent(percent).asList();
+
+        for (int i = 0; i < prices.size(); i++) {
+            Assert.assertThat(taxes.get(i), is(equalTo(prices.get(i).multiplyBy(new BigDecimal("0.23")))));
+        }
+
+    }
+
+    @Test
+    public void scaleAndAddShouldWorkElementWiseTest() {
+
+        MoneyVector vector = MoneyVector.of(prices);
+
+        List<Money> result = vector.copy().scale(2).add(vector).asList();
+
+        for (int i = 0; i < prices.size(); i++) {
+            Assert.assertThat(result.get(i), is(equalTo(prices.get(i).multiplyBy(3))));
+        }
+
+    }
+
+    @Test
+    public void overflowShouldLeaveVectorUnchangedTest() {
+
+        Money huge = new Money(new BigDecimal(Long.MAX_VALUE).movePointLeft(2));
+        List<Money> values = Arrays.asList(new Money(1), huge);
+        MoneyVector vector = MoneyVector.of(values);
+
+        try {
+            vector.add(MoneyVector.of(Arrays.asList(new Money(1), new Money(1))));
+            Assert.fail("Addition did not overflow");
+        } catch (ArithmeticException e) {
+            Assert.assertThat(vector.asList(), is(equalTo(values)));
+        }
+        try {
+            vector.applyPercent(new BigDecimal("200"));
+            Assert.fail("Multiplication did not overflow");
+        } catch (ArithmeticException e) {
+            Assert.assertThat(vector.asList(), is(equalTo(values)));
+        }
+
+    }
+
+}
@@ -0,0 +1,100 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
+import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferDiff;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class OfferDiffTest {
+
+    List<ProductData> products;
+
+    @Before
+    public void setup() {
+        products = new ArrayList<ProductData>();
+        for (int i = 1; i <= 5; i++) {
+            products.add(new Product(Id.generate(), new Money(10 * i), "product " + i, ProductType.STANDARD)
+                    .generateSnapshot());
+        }
+    }
+
+    @Test
+    public void diffShouldListChangesByKindTest() {
+
+        Offer previous = offer(items(item(0, 1), item(1, 1), item(2, 1)), items(item(3, 1)));
+        Offer current = offer(items(item(0, 1), item(1, 2), item(3, 1)), items(item(4, 1)));
+
+        OfferDiff diff = OfferDiff.between(previous, current);
+
+        Assert.assertThat(diff.getChanges().size(), is(equalTo(4)));
+        Assert.assertThat(diff.getRepriced().get(0).getProductId(), is(equalTo(id(1))));
+        Assert.assertThat(diff.getAvailabilityChanged().get(0).getProductId(), is(equalTo(id(3))));
+        Assert.assertThat(diff.getAvailabilityChanged().get(0).isAvailable(), is(true));
+        Assert.assertThat(diff.getAdded().get(0).getProductId(), is(equalTo(id(4))));
+        Assert.assertThat(diff.getRemoved().get(0).getProductId(), is(equalTo(id(2))));
+
+    }
+
+    @Test
+    public void diffOfSameOffersShouldBeEmptyTest() {
+
+        Offer offer = offer(items(item(0, 1), item(1, 1)), items(item(2, 1)));
+
+        Assert.assertThat(OfferDiff.between(offer, offer(items(item(1, 1), item(0, 1)), items(item(2, 1)))).isEmpty(),
+                is(true));
+
+    }
+
+    @Test
+    public void deserializedDiffShouldRebuildCurrentOfferTest() throws Exception {
+
+        Offer previous = offer(items(item(0, 1), item(1, 1), item(2, 1)), items(item(3, 1)));
+        Offer current = offer(items(new OfferItem(products.get(1), 1, new Discount("promotion", new Money(-2))),
+                item(3, 1), item(0, 1)), items(item(2, 3), item(4, 1)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OfferDiff.between(previous, current).writeTo(new DataOutputStream(bytes));
+        OfferDiff diff = OfferDiff.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Offer rebuilt = diff.applyTo(previous);
+
+        Assert.assertThat(new HashSet<OfferItem>(rebuilt.getAvailabeItems()),
+                is(equalTo(new HashSet<OfferItem>(current.getAvailabeItems()))));
+        Assert.assertThat(new HashSet<OfferItem>(rebuilt.getUnavailableItems()),
+                is(equalTo(new HashSet<OfferItem>(current.getUnavailableItems()))));
+
+    }
+
+    private Id id(int product) {
+        return products.get(product).getProductId();
+    }
+
+    private OfferItem item(int product, int quantity) {
+        return new OfferItem(products.get(product), quantity);
+    }
+
+    private List<OfferItem> items(OfferItem... items) {
+        return new ArrayList<OfferItem>(Arrays.asList(items));
+    }
+
+    private Offer offer(List<OfferItem> available, List<OfferItem> unavailable) {
+        return new Offer(available, unavailable);
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
+import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferComparison;
+import pl.com.bottega.ecommerce.sales.domain.offer.OfferItem;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductData;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class OfferTest {
+
+    List<ProductData> products;
+
+    @Before
+    public void setup() {
+        products = new ArrayList<ProductData>();
+        for (int i = 1; i <= 3; i++) {
+            products.add(new Product(Id.generate(), new Money(10 * i), "product " + i, ProductType.STANDARD)
+                    .generateSnapshot());
+        }
+    }
+
+    @Test
+    public void offersListingItemsInDifferentOrderShouldBeSameTest() {
+
+        Offer offer = offer(item(0, 1), item(1, 2), item(2, 3));
+        Offer seen = offer(item(2, 3), item(0, 1), item(1, 2));
+
+        Assert.assertThat(offer.compare(seen, Rate.percent(1)).isSame(), is(true));
+        Assert.assertThat(offer.sameAs(seen, 1), is(true));
+
+    }
+
+    @Test
+    public void comparisonShouldReportFirstDifferingItemTest() {
+
+        OfferItem changed = item(1, 5);
+        Offer offer = offer(item(0, 1), changed, item(2, 3));
+        Offer seen = offer(item(0, 1), item(1, 2), item(2, 3));
+
+        OfferComparison comparison = offer.compare(seen, Rate.percent(1));
+
+        Assert.assertThat(comparison.getDifference(), is(equalTo(OfferComparison.Difference.QUANTITY)));
+        Assert.assertThat(comparison.getItem(), is(equalTo(changed)));
+        Assert.assertThat(comparison.getSeenItem().getQuantity(), is(equalTo(2)));
+
+    }
+
+    @Test
+    public void missingItemAndItemCountShouldBeReportedTest() {
+
+        Offer offer = offer(item(0, 1), item(1, 1));
+
+        Assert.assertThat(offer.compare(offer(item(0, 1), item(2, 1)), Rate.percent(1)).getDifference(),
+                is(equalTo(OfferComparison.Difference.MISSING_ITEM)));
+        Assert.assertThat(offer.compare(offer(item(0, 1)), Rate.percent(1)).getDifference(),
+                is(equalTo(OfferComparison.Difference.ITEM_COUNT)));
+
+    }
+
+    @Test
+    public void totalCostShouldDifferBeyondToleranceTest() {
+
+        Offer offer = offer(item(0, 10));
+        Offer seen = offer(new OfferItem(products.get(0), 10, new Discount("promotion", new Money(-1.5))));
+
+        Assert.assertThat(offer.compare(seen, Rate.percent(1)).getDifference(),
+                is(equalTo(OfferComparison.Difference.TOTAL_COST)));
+        Assert.assertThat(offer.compare(seen, Rate.percent(2)).isSame(), is(true));
+
+    }
+
+    private OfferItem item(int product, int quantity) {
+        return new OfferItem(products.get(product), quantity);
+    }
+
+    private Offer offer(OfferItem... items) {
+        return new Offer(new ArrayList<OfferItem>(Arrays.asList(items)), Collections.<OfferItem>emptyList());
+    }
+}
@@ -0,0 +1,189 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.reservation.InMemoryReservationRepository;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservationExpiryScheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class ReservationExpirySchedulerTest {
+
+    ManualClock clock;
+    InMemoryReservationRepository repository;
+    ReservationExpiryScheduler scheduler;
+
+    @Before
+    public void setup() {
+        clock = new ManualClock(1_000_000);
+        repository = new InMemoryReservationRepository();
+        scheduler = new ReservationExpiryScheduler(repository, 30, TimeUnit.MINUTES, 1, TimeUnit.SECONDS, clock);
+    }
+
+    @Test
+    public void reservationShouldBeClosedOnceTimeToLivePassedTest() {
+
+        Reservation reservation = newReservation(clock.millis());
+        scheduler.schedule(reservation);
+
+        clock.now += TimeUnit.MINUTES.toMillis(30) - 1;
+        Assert.assertThat(scheduler.expire(), is(equalTo(0)));
+        Assert.assertThat(repository.load(reservation.getId()).isClosed(), is(false));
+
+        clock.now += 1;
+        Assert.assertThat(scheduler.expire(), is(equalTo(1)));
+        Assert.assertThat(repository.load(reservation.getId()).isClosed(), is(true));
+        Assert.assertThat(scheduler.size(), is(equalTo(0)));
+
+    }
+
+    @Test
+    public void cancelledReservationShouldStayOpenTest() {
+
+        Reservation reservation = newReservation(clock.millis());
+        scheduler.schedule(reservation);
+
+        Assert.assertThat(scheduler.cancel(reservation.getId()), is(true));
+        clock.now += TimeUnit.HOURS.toMillis(1);
+
+        Assert.assertThat(scheduler.expire(), is(equalTo(0)));
+        Assert.assertThat(repository.load(reservation.getId()).isClosed(), is(false));
+        Assert.assertThat(scheduler.cancel(reservation.getId()), is(false));
+
+    }
+
+    @Test
+    public void reservationClosedMeanwhileShouldBeSkippedTest() {
+
+        Reservation reservation = newReservation(clock.millis() - TimeUnit.HOURS.toMillis(1));
+        scheduler.schedule(reservation);
+        Reservation loaded = repository.load(reservation.getId());
+        loaded.close();
+        repository.save(loaded);
+
+        Assert.assertThat(scheduler.expire(), is(equalTo(0)));
+        Assert.assertThat(scheduler.size(), is(equalTo(0)));
+
+    }
+
+    @Test
+    public void reservationsShouldExpireExactlyAtDeadlinesOnAllWheelLevelsTest() {
+
+        scheduler = new ReservationExpiryScheduler(repository, 0, TimeUnit.MILLISECONDS, 1, TimeUnit.MILLISECONDS, clock);
+        Random random = new Random(7);
+        Map<Id, Long> deadlines = new HashMap<Id, Long>();
+        for (int i = 0; i < 2000; i++) {
+            // up to beyond the range of the top level
+            long deadline = clock.now + random.nextInt(20_000_000);
+            Reservation reservation = newReservation(deadline);
+            scheduler.schedule(reservation);
+            deadlines.put(reservation.getId(), deadline);
+        }
+
+        int closed = 0;
+        long end = clock.now + 20_000_000;
+        while (clock.now < end) {
+            clock.now += 1 + random.nextInt(200_000);
+            closed += scheduler.expire();
+            int due = 0;
+            for (Map.Entry<Id, Long> deadline : deadlines.entrySet()) {
+                boolean expired = deadline.getValue() <= clock.now;
+                Assert.assertThat(repository.load(deadline.getKey()).isClosed(), is(expired));
+                due += expired ? 1 : 0;
+            }
+            Assert.assertThat(closed, is(equalTo(due)));
+        }
+        Assert.assertThat(scheduler.size(), is(equalTo(0)));
+
+    }
+
+    @Test
+    public void failingReservationShouldNotStopBatchAndShouldBeRetriedTest() {
+
+        List<Reservation> reservations = new ArrayList<Reservation>();
+        Id[] failing = new Id[1];
+        boolean[] failOnSave = { true };
+        repository = new InMemoryReservationRepository() {
+            @Override
+            public void save(Reservation reservation) {
+                if (failOnSave[0] && reservation.getId().equals(failing[0])) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                super.save(reservation);
+            }
+        };
+        scheduler = new ReservationExpiryScheduler(repository, 30, TimeUnit.MINUTES, 1, TimeUnit.SECONDS, clock);
+        for (int i = 0; i < 3; i++) {
+            reservations.add(newReservation(clock.millis()));
+            scheduler.schedule(reservations.get(i));
+        }
+        failing[0] = reservations.get(1).getId();
+
+        clock.now += TimeUnit.MINUTES.toMillis(30);
+        Assert.assertThat(scheduler.expire(), is(equalTo(2)));
+        Assert.assertThat(repository.load(reservations.get(2).getId()).isClosed(), is(true));
+        Assert.assertThat(repository.load(failing[0]).isClosed(), is(false));
+        Assert.assertThat(scheduler.getFailureCount(), is(equalTo(1L)));
+        Assert.assertThat(scheduler.size(), is(equalTo(1)));
+
+        failOnSave[0] = false;
+        Assert.assertThat(scheduler.expire(), is(equalTo(0)));
+        clock.now += TimeUnit.SECONDS.toMillis(1);
+        Assert.assertThat(scheduler.expire(), is(equalTo(1)));
+        Assert.assertThat(repository.load(failing[0]).isClosed(), is(true));
+
+    }
+
+    @Test
+    public void alwaysFailingReservationShouldBeRetriedWithBackoffAndAbandonedTest() {
+
+        repository = new InMemoryReservationRepository() {
+            @Override
+            public Reservation load(Id reservationId) {
+                throw new IllegalStateException("corrupt record");
+            }
+        };
+        scheduler = new ReservationExpiryScheduler(repository, 30, TimeUnit.MINUTES, 1, TimeUnit.SECONDS, clock);
+        scheduler.schedule(Id.generate(), clock.millis());
+
+        List<Long> retryDelays = new ArrayList<Long>();
+        long lastAttempt = clock.now;
+        scheduler.expire();
+        for (int second = 0; second < 1000 && scheduler.size() > 0; second++) {
+            clock.now += TimeUnit.SECONDS.toMillis(1);
+            long failuresBefore = scheduler.getFailureCount();
+            scheduler.expire();
+            if (scheduler.getFailureCount() > failuresBefore) {
+                retryDelays.add(TimeUnit.MILLISECONDS.toSeconds(clock.now - lastAttempt));
+                lastAttempt = clock.now;
+            }
+        }
+
+        Assert.assertThat(retryDelays, is(equalTo(Arrays.asList(1L, 2L, 4L, 8L, 16L, 32L, 64L))));
+        Assert.assertThat(scheduler.getFailureCount(), is(equalTo(8L)));
+        Assert.assertThat(scheduler.getAbandonedCount(), is(equalTo(1L)));
+        Assert.assertThat(scheduler.size(), is(equalTo(0)));
+
+    }
+
+    private Reservation newReservation(long createDate) {
+        Reservation reservation = new Reservation(Id.generate(), Reservation.ReservationStatus.OPENED,
+                new ClientData(Id.generate(), "client"), new Date(createDate));
+        repository.save(reservation);
+        return reservation;
+    }
+}
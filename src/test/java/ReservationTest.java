@@ -0,0 +1,238 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.ClientData;
+import pl.com.bottega.ecommerce.canonicalmodel.publishedlanguage.Id;
+import pl.com.bottega.ecommerce.sales.domain.offer.Discount;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountPolicy;
+import pl.com.bottega.ecommerce.sales.domain.offer.DiscountRequest;
+import pl.com.bottega.ecommerce.sales.domain.offer.Offer;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.Product;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sales.domain.reservation.Reservation;
+import pl.com.bottega.ecommerce.sales.domain.reservation.ReservedProduct;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+
+public class ReservationTest {
+
+    Reservation reservation;
+
+    @Before
+    public void setup() {
+        reservation = new Reservation(Id.generate(), Reservation.ReservationStatus.OPENED,
+                new ClientData(Id.generate(), "client"), new Date());
+    }
+
+    @Test
+    public void sameProductLoadedTwiceShouldIncreaseQuantityTest() {
+
+        Product product = new Product(new Id("1"), new Money(10), "product", ProductType.STANDARD);
+        Product sameProduct = new Product(new Id("1"), new Money(10), "product", ProductType.STANDARD);
+
+        reservation.add(product, 2);
+        reservation.add(sameProduct, 3);
+
+        Assert.assertThat(reservation.contains(sameProduct), is(true));
+        Assert.assertThat(reservation.getReservedProducts().size(), is(equalTo(1)));
+        Assert.assertThat(reservation.getReservedProducts().get(0).getQuantity(), is(equalTo(5)));
+
+    }
+
+    @Test
+    public void reservedProductsShouldKeepOrderOfAddingTest() {
+
+        for (int i = 0; i < 100; i++) {
+            reservation.add(new Product(new Id(String.valueOf(i)), new Money(i), "product" + i, ProductType.STANDARD), 1);
+        }
+        reservation.add(new Product(new Id("0"), new Money(0), "product0", ProductType.STANDARD), 1);
+
+        List<ReservedProduct> reserved = reservation.getReservedProducts();
+
+        Assert.assertThat(reserved.size(), is(equalTo(100)));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertThat(reserved.get(i).getProductId(), is(equalTo(new Id(String.valueOf(i)))));
+        }
+        Assert.assertThat(reserved.get(0).getQuantity(), is(equalTo(2)));
+
+    }
+
+    @Test
+    public void offerShouldBePricedInOneBatchCallTest() {
+
+        for (int i = 1; i <= 3; i++) {
+            reservation.add(new Product(Id.generate(), new Money(10 * i), "product" + i, ProductType.STANDARD), i);
+        }
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        DiscountPolicy policy = new DiscountPolicy() {
+            @Override
+            public Discount applyDiscount(Product product, int quantity, Money regularCost) {
+                throw new AssertionError("single item call");
+            }
+
+            @Override
+            public List<Discount> applyDiscounts(List<DiscountRequest> requests) {
+                batchSizes.add(requests.size());
+                List<Discount> discounts = new ArrayList<Discount>();
+                for (DiscountRequest request : requests) {
+                    discounts.add(new Discount("batch", new Money(-request.getQuantity())));
+                }
+                return discounts;
+            }
+        };
+
+        Offer offer = reservation.calculateOffer(policy);
+
+        Assert.assertThat(batchSizes, is(equalTo(Arrays.asList(3))));
+        Assert.assertThat(offer.getAvailabeItems().size(), is(equalTo(3)));
+        Assert.assertThat(offer.getAvailabeItems().get(2).getDiscount().getValue(), is(equalTo(new Money(-3))));
+
+    }
+
+    @Test
+    public void singleItemPolicyShouldBeCalledForEveryItemTest() {
+
+        reservation.add(new Product(Id.generate(), new Money(10), "product1", ProductType.STANDARD), 1);
+        reservation.add(new Product(Id.generate(), new Money(20), "product2", ProductType.STANDARD), 2);
+        List<String> priced = new ArrayList<String>();
+        DiscountPolicy policy = (product, quantity, regularCost) -> {
+            priced.add(product.getName());
+            return null;
+        };
+
+        Offer offer = reservation.calculateOffer(policy);
+
+        Assert.assertThat(priced, is(equalTo(Arrays.asList("product1", "product2"))));
+        Assert.assertThat(offer.getAvailabeItems().size(), is(equalTo(2)));
+
+    }
+
+    @Test
+    public void offerItemsOfUnchangedItemsShouldBeReusedTest() {
+
+        Product first = new Product(Id.generate(), new Money(10), "product1", ProductType.STANDARD);
+        Product second = new Product(Id.generate(), new Money(20), "product2", ProductType.STANDARD);
+        Product third = new Product(Id.generate(), new Money(30), "product3", ProductType.STANDARD);
+        reservation.add(first, 1);
+        reservation.add(second, 1);
+        reservation.add(third, 1);
+        List<String> priced = new ArrayList<String>();
+        DiscountPolicy policy = (product, quantity, regularCost) -> {
+            priced.add(product.getName());
+            return null;
+        };
+
+        Offer offer = reservation.calculateOffer(policy);
+        reservation.add(second, 2);
+        third.markAsRemoved();
+        Offer recalculated = reservation.calculateOffer(policy);
+
+        Assert.assertThat(priced, is(equalTo(Arrays.asList("product1", "product2", "product3", "product1", "product2"))));
+        Assert.assertThat(recalculated.getAvailabeItems().get(0) == offer.getAvailabeItems().get(0), is(true));
+        Assert.assertThat(recalculated.getAvailabeItems().get(1).getQuantity(), is(equalTo(3)));
+        Assert.assertThat(recalculated.getUnavailableItems().size(), is(equalTo(1)));
+
+    }
+
+    @Test
+    public void otherPolicyShouldRecalculateAllItemsTest() {
+
+        reservation.add(new Product(Id.generate(), new Money(10), "product1", ProductType.STANDARD), 1);
+        reservation.calculateOffer((product, quantity, regularCost) -> null);
+
+        Offer offer = reservation.calculateOffer((product, quantity, regularCost) -> new Discount("other", new Money(-1)));
+
+        Assert.assertThat(offer.getAvailabeItems().get(0).getDiscount().getCause(), is(equalTo("other")));
+
+    }
+
+    @Test
+    public void equalPolicyCreatedPerRequestShouldReuseOfferItemsTest() {
+
+        reservation.add(new Product(Id.generate(), new Money(10), "product1", ProductType.STANDARD), 1);
+        List<String> priced = new ArrayList<String>();
+
+        reservation.calculateOffer(new FlatDiscountPolicy(1, priced));
+        Offer offer = reservation.calculateOffer(new FlatDiscountPolicy(1, priced));
+        reservation.calculateOffer(new FlatDiscountPolicy(2, priced));
+
+        Assert.assertThat(priced, is(equalTo(Arrays.asList("product1", "product1"))));
+        Assert.assertThat(offer.getAvailabeItems().get(0).getDiscount().getValue(), is(equalTo(new Money(-1))));
+
+    }
+
+    @Test
+    public void batchPolicyShouldSeeWholeReservationWhenOneItemChangesTest() {
+
+        Product first = new Product(Id.generate(), new Money(10), "product1", ProductType.STANDARD);
+        Product second = new Product(Id.generate(), new Money(20), "product2", ProductType.STANDARD);
+        reservation.add(first, 1);
+        reservation.add(second, 1);
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        DiscountPolicy tiered = new DiscountPolicy() {
+            @Override
+            public Discount applyDiscount(Product product, int quantity, Money regularCost) {
+                throw new AssertionError("single item call");
+            }
+
+            @Override
+            public List<Discount> applyDiscounts(List<DiscountRequest> requests) {
+                batchSizes.add(requests.size());
+                int total = 0;
+                for (DiscountRequest request : requests) {
+                    total += request.getQuantity();
+                }
+                List<Discount> discounts = new ArrayList<Discount>();
+                for (DiscountRequest request : requests) {
+                    discounts.add(total >= 3 ? new Discount("tier", new Money(-1)) : null);
+                }
+                return discounts;
+            }
+        };
+
+        Offer offer = reservation.calculateOffer(tiered);
+        reservation.calculateOffer(tiered);
+        reservation.add(second, 1);
+        Offer recalculated = reservation.calculateOffer(tiered);
+
+        Assert.assertThat(batchSizes, is(equalTo(Arrays.asList(2, 2))));
+        Assert.assertThat(offer.getAvailabeItems().get(0).getDiscount() == null, is(true));
+        Assert.assertThat(recalculated.getAvailabeItems().get(0).getDiscount().getCause(), is(equalTo("tier")));
+        Assert.assertThat(recalculated.getAvailabeItems().get(1).getDiscount().getCause(), is(equalTo("tier")));
+
+    }
+
+    static class FlatDiscountPolicy implements DiscountPolicy {
+
+        final int discount;
+        final List<String> priced;
+
+        FlatDiscountPolicy(int discount, List<String> priced) {
+            this.discount = discount;
+            this.priced = priced;
+        }
+
+        @Override
+        public Discount applyDiscount(Product product, int quantity, Money regularCost) {
+            priced.add(product.getName());
+            return new Discount("flat", new Money(-discount));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof FlatDiscountPolicy && ((FlatDiscountPolicy) obj).discount == discount;
+        }
+
+        @Override
+        public int hashCode() {
+            return discount;
+        }
+    }
+}
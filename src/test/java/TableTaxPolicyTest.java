@@ -0,0 +1,88 @@
+import org.junit.Assert;
+import org.junit.Test;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.TableTaxPolicy;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.Tax;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.TaxRateTable;
+import pl.com.bottega.ecommerce.sales.domain.invoicing.TaxRateTableBuilder;
+import pl.com.bottega.ecommerce.sales.domain.productscatalog.ProductType;
+import pl.com.bottega.ecommerce.sharedkernel.Money;
+import pl.com.bottega.ecommerce.sharedkernel.Rate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+
+public class TableTaxPolicyTest {
+
+    private static final Date RATE_CHANGE = new Date(1000000L);
+
+    private TaxRateTable table = new TaxRateTableBuilder()
+            .withRate(ProductType.STANDARD, Rate.percent(23))
+            .withRate(ProductType.FOOD, Rate.percent(5))
+            .withRate(ProductType.FOOD, Rate.percent(8), RATE_CHANGE)
+            .build();
+
+    @Test
+    public void taxShouldUseRateOfProductTypeTest() {
+
+        TableTaxPolicy policy = new TableTaxPolicy(table);
+
+        Tax tax = policy.calculateTax(ProductType.STANDARD, new Money(new BigDecimal("10.00")));
+
+        Assert.assertThat(tax.getAmount(), is(equalTo(new Money(new BigDecimal("2.30")))));
+        Assert.assertThat(tax.getDescription(), is(equalTo("23%")));
+
+    }
+
+    @Test
+    public void taxShouldUseRateEffectiveAtCurrentTimeTest() {
+
+        TableTaxPolicy before = new TableTaxPolicy(table, clockAt(RATE_CHANGE.getTime() - 1));
+        TableTaxPolicy after = new TableTaxPolicy(table, clockAt(RATE_CHANGE.getTime()));
+
+        Assert.assertThat(before.calculateTax(ProductType.FOOD, new Money(100)).getAmount(), is(equalTo(new Money(5))));
+        Assert.assertThat(after.calculateTax(ProductType.FOOD, new Money(100)).getAmount(), is(equalTo(new Money(8))));
+
+    }
+
+    @Test
+    public void descriptionsShouldBeSharedBetweenTaxesTest() {
+
+        TableTaxPolicy policy = new TableTaxPolicy(table);
+
+        Tax first = policy.calculateTax(ProductType.STANDARD, new Money(1));
+        Tax second = policy.calculateTax(ProductType.STANDARD, new Money(2));
+
+        Assert.assertThat(first.getDescription(), is(sameInstance(second.getDescription())));
+
+    }
+
+    @Test
+    public void updateShouldSwapRatesTest() {
+
+        TableTaxPolicy policy = new TableTaxPolicy(table);
+
+        policy.update(new TaxRateTableBuilder().withRate(ProductType.DRUG, Rate.percent(0)).build());
+
+        Assert.assertThat(policy.calculateTax(ProductType.DRUG, new Money(10)).getAmount(), is(equalTo(Money.ZERO)));
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingRateShouldThrowTest() {
+
+        new TableTaxPolicy(table).calculateTax(ProductType.DRUG, new Money(10));
+
+    }
+
+    private Clock clockAt(long millis) {
+        return Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+}